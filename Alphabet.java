@@ -2,7 +2,10 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The character-to-index mapping
+ *  is precomputed: a direct table when the characters lie in a narrow
+ *  range (as Latin-1 and most BMP alphabets do), and an open-addressed
+ *  hash table for sparse alphabets.
  *  @author KaitoGarcia
  */
 
@@ -11,7 +14,21 @@ class Alphabet {
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _chars = chars;
+        _chars = chars.toCharArray();
+        int lo = Character.MAX_VALUE, hi = 0;
+        for (char ch : _chars) {
+            lo = Math.min(lo, ch);
+            hi = Math.max(hi, ch);
+        }
+        if (hi < LATIN1_SIZE) {
+            lo = 0;
+        }
+        if (_chars.length == 0 || hi - lo < Math.max(LATIN1_SIZE,
+                                                     DENSITY * _chars.length)) {
+            buildDense(Math.min(lo, hi), hi);
+        } else {
+            buildHashed();
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -19,22 +36,87 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Fill in a direct index table covering the characters LO .. HI. */
+    private void buildDense(int lo, int hi) {
+        _base = lo;
+        _dense = new int[hi - lo + 1];
+        for (int i = 0; i < _dense.length; i += 1) {
+            _dense[i] = -1;
+        }
+        for (int k = 0; k < _chars.length; k += 1) {
+            int slot = _chars[k] - lo;
+            if (_dense[slot] != -1) {
+                throw error("duplicate character %c in alphabet", _chars[k]);
+            }
+            _dense[slot] = k;
+        }
+    }
+
+    /** Fill in an open-addressed hash index of my characters. */
+    private void buildHashed() {
+        int bits = 1;
+        while ((1 << bits) < 2 * _chars.length) {
+            bits += 1;
+        }
+        _shift = 32 - bits;
+        _keys = new char[1 << bits];
+        _values = new int[1 << bits];
+        for (int i = 0; i < _values.length; i += 1) {
+            _values[i] = -1;
+        }
+        int mask = _values.length - 1;
+        for (int k = 0; k < _chars.length; k += 1) {
+            char ch = _chars[k];
+            int h = hash(ch);
+            while (_values[h] != -1) {
+                if (_keys[h] == ch) {
+                    throw error("duplicate character %c in alphabet", ch);
+                }
+                h = (h + 1) & mask;
+            }
+            _keys[h] = ch;
+            _values[h] = k;
+        }
+    }
+
+    /** Return the home slot of CH in the hashed index. */
+    private int hash(char ch) {
+        return (ch * HASH_MULTIPLIER) >>> _shift;
+    }
+
+    /** Return the index of CH, or -1 if it is not in this alphabet. */
+    private int indexOf(char ch) {
+        if (_dense != null) {
+            int slot = ch - _base;
+            if (slot >= 0 && slot < _dense.length) {
+                return _dense[slot];
+            }
+            return -1;
+        }
+        int mask = _values.length - 1;
+        for (int h = hash(ch); _values[h] != -1; h = (h + 1) & mask) {
+            if (_keys[h] == ch) {
+                return _values[h];
+            }
+        }
+        return -1;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _chars.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        String chString = String.valueOf(ch);
-        return _chars.contains(chString);
+        return indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        if (index >= 0 && index < size()) {
-            return _chars.charAt(index);
+        if (index >= 0 && index < _chars.length) {
+            return _chars[index];
         }
         throw error("out of bounds");
     }
@@ -42,12 +124,38 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (contains(ch)) {
-            return _chars.indexOf(ch);
+        int index = indexOf(ch);
+        if (index >= 0) {
+            return index;
         }
         throw error("must be in alphabet");
     }
 
+    /** Size of the direct table used for all-Latin-1 alphabets. */
+    private static final int LATIN1_SIZE = 256;
+
+    /** Largest ratio of direct-table span to alphabet size. */
+    private static final int DENSITY = 8;
+
+    /** Fibonacci hashing multiplier for the hashed index. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
     /** chars in alphabet. */
-    private String _chars;
+    private final char[] _chars;
+
+    /** Smallest character covered by _dense. */
+    private int _base;
+
+    /** Direct index table: _dense[CH - _base] is the index of CH, or -1.
+     *  Null when the hashed index is in use. */
+    private int[] _dense;
+
+    /** Hashed index keys. */
+    private char[] _keys;
+
+    /** Hashed index values, parallel to _keys; -1 marks an empty slot. */
+    private int[] _values;
+
+    /** Shift that reduces a 32-bit hash to a slot of the hashed index. */
+    private int _shift;
 }
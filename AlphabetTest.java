@@ -0,0 +1,79 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author KaitoGarcia
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ALPHA maps each character of CHARS to its position in
+     *  CHARS and back.  TESTID is used in error messages. */
+    private void checkAlphabet(String testId, Alphabet alpha, String chars) {
+        assertEquals(testId + " (wrong length)", chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(msg(testId, "missing '%c'", c), alpha.contains(c));
+            assertEquals(msg(testId, "wrong index of '%c'", c),
+                         i, alpha.toInt(c));
+            assertEquals(msg(testId, "wrong character at %d", i),
+                         c, alpha.toChar(i));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkUpper() {
+        checkAlphabet("upper", UPPER, UPPER_STRING);
+        assertFalse(UPPER.contains('a'));
+        assertFalse(UPPER.contains('\u0141'));
+    }
+
+    @Test
+    public void checkBmp() {
+        String chars = "\u0410\u0411\u0412\u0413\u0414\u0415";
+        checkAlphabet("cyrillic", new Alphabet(chars), chars);
+    }
+
+    @Test
+    public void checkSparse() {
+        String chars = "A\u4e2d\u00e9\uffee\u0391z";
+        Alphabet alpha = new Alphabet(chars);
+        checkAlphabet("sparse", alpha, chars);
+        assertFalse(alpha.contains('B'));
+        assertFalse(alpha.contains('\u4e2e'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicate() {
+        new Alphabet("A\u4e2dB\u4e2d");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new Alphabet("ABC").toInt('D');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOutOfBounds() {
+        new Alphabet("ABC").toChar(3);
+    }
+
+}
@@ -0,0 +1,314 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A simulation of the Turing-Welchman Bombe, which recovers the key of
+ *  a message from a crib: plaintext known to lie at a given position.
+ *  Each crib letter and the ciphertext letter below it are joined in a
+ *  menu, a graph whose edge for keystroke T says that if plugboard
+ *  partner of one end is A, that of the other is the conversion of A by
+ *  the rotors (without plugboard) at keystroke T.
+ *
+ *  For each choice of rotors and start setting, the bombe supposes that
+ *  the test letter, the best-connected letter of the menu, has some
+ *  partner, and follows the menu's implications to their closure.  The
+ *  state is one register of live wires per letter, a long bit mask
+ *  saying which partners are implied; the diagonal board adds B to A's
+ *  register whenever A is added to B's.  If every wire of the test
+ *  register is live, every supposition leads to a contradiction and the
+ *  setting is rejected; otherwise the bombe stops, and any supposition
+ *  that leaves a single live wire in the test register gives the
+ *  plugboard pairs for the letters of the menu.  Settings are divided
+ *  among the threads of a fork/join pool by the units of a KeySpace, one
+ *  rotor choice and first setting per task.
+ *  @author KaitoGarcia
+ */
+class Bombe {
+
+    /** A bombe for machines configured as CONFIG, for a message with
+     *  CIPHERTEXT whose plaintext at position OFFSET is CRIB.  Blanks
+     *  and line terminators in CRIB and CIPHERTEXT are ignored. */
+    Bombe(Machine config, String crib, String ciphertext, int offset) {
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        if (_size > Long.SIZE) {
+            throw error("alphabet too large for a bombe");
+        }
+        _full = _size == Long.SIZE ? -1L : (1L << _size) - 1;
+        String plain = crib.replaceAll("[ \t\r\n]", "");
+        String cipher = ciphertext.replaceAll("[ \t\r\n]", "");
+        if (offset < 0 || plain.isEmpty()
+            || offset + plain.length() > cipher.length()) {
+            throw error("crib does not fit in ciphertext");
+        }
+        buildMenu(plain, cipher, offset);
+        _keys = new KeySpace(config);
+    }
+
+    /** Build the menu for the crib PLAIN at position OFFSET of CIPHER,
+     *  keeping only the edges connected to the test letter. */
+    private void buildMenu(String plain, String cipher, int offset) {
+        int n = plain.length();
+        int[] from = new int[n], to = new int[n];
+        int[] degree = new int[_size];
+        for (int i = 0; i < n; i += 1) {
+            from[i] = _alphabet.toInt(plain.charAt(i));
+            to[i] = _alphabet.toInt(cipher.charAt(offset + i));
+            if (from[i] == to[i]) {
+                throw error("crib letter %c cannot encrypt to itself",
+                            plain.charAt(i));
+            }
+            degree[from[i]] += 1;
+            degree[to[i]] += 1;
+        }
+        int test = 0;
+        for (int x = 1; x < _size; x += 1) {
+            if (degree[x] > degree[test]) {
+                test = x;
+            }
+        }
+        _test = test;
+
+        boolean[] reached = new boolean[_size];
+        boolean[] kept = new boolean[n];
+        Deque<Integer> pending = new ArrayDeque<>();
+        reached[test] = true;
+        pending.push(test);
+        while (!pending.isEmpty()) {
+            int x = pending.pop();
+            for (int i = 0; i < n; i += 1) {
+                int other = from[i] == x ? to[i] : to[i] == x ? from[i] : -1;
+                if (other >= 0) {
+                    kept[i] = true;
+                    if (!reached[other]) {
+                        reached[other] = true;
+                        pending.push(other);
+                    }
+                }
+            }
+        }
+
+        int edges = 0;
+        for (boolean k : kept) {
+            edges += k ? 1 : 0;
+        }
+        _positions = new int[edges];
+        _ends = new int[_size][];
+        _edges = new int[_size][];
+        int[] links = new int[_size];
+        for (int i = 0, e = 0; i < n; i += 1) {
+            if (kept[i]) {
+                _positions[e] = offset + i;
+                links[from[i]] += 1;
+                links[to[i]] += 1;
+                e += 1;
+            }
+        }
+        for (int x = 0; x < _size; x += 1) {
+            _ends[x] = new int[links[x]];
+            _edges[x] = new int[links[x]];
+            links[x] = 0;
+        }
+        for (int i = 0, e = 0; i < n; i += 1) {
+            if (kept[i]) {
+                addLink(from[i], to[i], e, links);
+                addLink(to[i], from[i], e, links);
+                e += 1;
+            }
+        }
+    }
+
+    /** Record that edge E joins letter X to letter Y, where LINKS[X] is
+     *  the number of X's edges recorded so far. */
+    private void addLink(int x, int y, int e, int[] links) {
+        _ends[x][links[x]] = y;
+        _edges[x][links[x]] = e;
+        links[x] += 1;
+    }
+
+    /** Return the letter whose partner is supposed at each setting. */
+    char testLetter() {
+        return _alphabet.toChar(_test);
+    }
+
+    /** Return the number of edges in the menu. */
+    int menuSize() {
+        return _positions.length;
+    }
+
+    /** Return the number of rotor choices and settings to try. */
+    long keysTotal() {
+        return _keys.keysTotal();
+    }
+
+    /** Return the stops found using the threads of POOL, in order of
+     *  rotor choice and setting. */
+    List<Stop> run(ForkJoinPool pool) {
+        return _keys.search(pool, this::runUnit, (left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+    }
+
+    /** Return the stops among the keys of unit UNIT. */
+    private List<Stop> runUnit(int unit) {
+        List<Stop> stops = new ArrayList<>();
+        int[][] rows = new int[_positions.length][_size];
+        long[] wires = new long[_size];
+        long[] pending = new long[_size];
+        int[] stack = new int[_size];
+        _keys.forEachKey(unit, (order, settings, cursor) -> {
+            scramblers(cursor, rows);
+            if (!propagate(rows, 0, wires, pending, stack)) {
+                long live = wires[_test];
+                if (Long.bitCount(live) == 1) {
+                    stops.add(new Stop(order, settings, wires));
+                } else {
+                    for (int g = 0; g < _size; g += 1) {
+                        if ((live >>> g & 1) == 0
+                            && !propagate(rows, g, wires, pending, stack)
+                            && Long.bitCount(wires[_test]) == 1) {
+                            stops.add(new Stop(order, settings, wires));
+                        }
+                    }
+                }
+            }
+        });
+        return stops;
+    }
+
+    /** Set ROWS[E][X] to the conversion of X by the rotors of CURSOR at
+     *  the keystroke of menu edge E, counting from CURSOR's current
+     *  settings.  CURSOR is stepped. */
+    private void scramblers(PackedRotors cursor, int[][] rows) {
+        int t = 0;
+        for (int e = 0; e < _positions.length; e += 1) {
+            for (; t <= _positions[e]; t += 1) {
+                cursor.step();
+            }
+            int[] row = rows[e];
+            for (int x = 0; x < _size; x += 1) {
+                row[x] = cursor.convert(x);
+            }
+        }
+    }
+
+    /** Set WIRES to the closure of the supposition that the test letter
+     *  is joined to GUESS, given scrambler conversions ROWS, using
+     *  PENDING and STACK as scratch space.  Return true iff every wire
+     *  of the test register is live, in which case WIRES may be
+     *  incomplete.  Live wires not yet carried through the menu are
+     *  kept as a mask per register in PENDING, so each register's new
+     *  wires pass along each of its edges in one batch. */
+    private boolean propagate(int[][] rows, int guess, long[] wires,
+                              long[] pending, int[] stack) {
+        Arrays.fill(wires, 0);
+        Arrays.fill(pending, 0);
+        int top = energize(wires, pending, stack, 0, _test, 1L << guess);
+        while (top > 0) {
+            top -= 1;
+            int x = stack[top];
+            long fresh = pending[x];
+            pending[x] = 0;
+            int[] ends = _ends[x], edges = _edges[x];
+            for (int j = 0; j < ends.length; j += 1) {
+                int[] row = rows[edges[j]];
+                long implied = 0;
+                for (long m = fresh; m != 0; m &= m - 1) {
+                    implied |= 1L << row[Long.numberOfTrailingZeros(m)];
+                }
+                top = energize(wires, pending, stack, top, ends[j], implied);
+            }
+            if (wires[_test] == _full) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Make live the wires MASK of register X of WIRES, and, through the
+     *  diagonal board, wire X of each register in MASK, adding those not
+     *  already live to PENDING.  STACK, whose top is at TOP, holds the
+     *  registers with pending wires.  Return the new top. */
+    private int energize(long[] wires, long[] pending, int[] stack, int top,
+                         int x, long mask) {
+        long fresh = mask & ~wires[x];
+        if (fresh == 0) {
+            return top;
+        }
+        wires[x] |= fresh;
+        if (pending[x] == 0) {
+            stack[top] = x;
+            top += 1;
+        }
+        pending[x] |= fresh;
+        long bit = 1L << x;
+        for (long m = fresh; m != 0; m &= m - 1) {
+            int y = Long.numberOfTrailingZeros(m);
+            if ((wires[y] & bit) == 0) {
+                wires[y] |= bit;
+                if (pending[y] == 0) {
+                    stack[top] = y;
+                    top += 1;
+                }
+                pending[y] |= bit;
+            }
+        }
+        return top;
+    }
+
+    /** Return the partners implied by WIRES, the closure of a
+     *  supposition: the partner of X is the single live wire of X's
+     *  register, or X if there is not exactly one. */
+    private static int[] partners(long[] wires) {
+        int[] result = new int[wires.length];
+        for (int x = 0; x < wires.length; x += 1) {
+            result[x] = Long.bitCount(wires[x]) == 1
+                ? Long.numberOfTrailingZeros(wires[x]) : x;
+        }
+        return result;
+    }
+
+    /** A stop: a rotor choice and setting consistent with the menu, and
+     *  as its plugboard the pairs it implies for letters of the menu. */
+    final class Stop extends KeySpace.Key {
+
+        /** The stop at rotor choice ORDER and SETTINGS, where WIRES is
+         *  the closure of a supposition consistent with the menu. */
+        private Stop(int order, int[] settings, long[] wires) {
+            super(_keys, order, settings, partners(wires));
+        }
+    }
+
+    /** Alphabet of the machines. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** A register with every wire live. */
+    private final long _full;
+
+    /** The letter whose partner is supposed. */
+    private int _test;
+
+    /** Keystroke, from the start of the message, of each menu edge, in
+     *  increasing order. */
+    private int[] _positions;
+
+    /** _ends[X][J] is the letter at the other end of X's Jth edge. */
+    private int[][] _ends;
+
+    /** _edges[X][J] is the index in _positions of X's Jth edge. */
+    private int[][] _edges;
+
+    /** Rotor choices and settings to try. */
+    private final KeySpace _keys;
+}
@@ -0,0 +1,129 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author KaitoGarcia
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A message, without blanks. */
+    private static final String PLAIN =
+        ("WETTERVORHERSAGEFUERDIEBUCHTVONBISKAYA KEINE BESONDEREN "
+         + "VORKOMMNISSE HEIL").replace(" ", "");
+
+    /** Return PLAIN encrypted with the rotors ROTORS at SETTING and the
+     *  plugboard CYCLES on navalMachine(). */
+    private String encrypt(String[] rotors, String setting, String cycles) {
+        return navalEncrypt(PLAIN, rotors, setting, cycles);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStops() {
+        String[] rotors = { "B", "III", "II", "I" };
+        String cycles = "(AK) (EZ) (RW) (TY)";
+        Permutation plugboard = new Permutation(cycles, UPPER);
+        String cipher = encrypt(rotors, "QEV", cycles);
+        Bombe bombe =
+            new Bombe(navalMachine(), PLAIN.substring(0, 24), cipher, 0);
+        assertEquals(6 * 26 * 26 * 26, bombe.keysTotal());
+        assertEquals('E', bombe.testLetter());
+        List<Bombe.Stop> stops;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            stops = bombe.run(pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(msg("stops", "too many: %d", stops.size()),
+                   stops.size() < 20);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (Arrays.asList(stop.rotors()).equals(Arrays.asList(rotors))
+                && stop.setting().equals("QEV")) {
+                found = stop;
+            }
+        }
+        assertNotNull("no stop at the key", found);
+        Permutation implied = new Permutation(found.plugboard(), UPPER);
+        for (int x = 0; x < 26; x += 1) {
+            int y = implied.permute(x);
+            if (y != x) {
+                assertEquals(msg("stop", "wrong partner of %c",
+                                 UPPER.toChar(x)),
+                             plugboard.permute(x), y);
+            }
+        }
+        assertTrue(found.plugboard().contains("(EZ)"));
+    }
+
+    @Test
+    public void testCribOffset() {
+        String[] rotors = { "B", "I", "III", "II" };
+        String cipher = encrypt(rotors, "AZM", "");
+        Bombe bombe =
+            new Bombe(navalMachine(), PLAIN.substring(20, 50), cipher, 20);
+        boolean found = false;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Bombe.Stop stop : bombe.run(pool)) {
+                found |= stop.toString().equals("* B I III II AZM");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue("no stop at the key", found);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncryption() {
+        String cipher = encrypt(new String[] { "B", "I", "II", "III" },
+                                "AAA", "");
+        new Bombe(navalMachine(), cipher.substring(0, 1) + "ABC", cipher, 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new Bombe(navalMachine(), PLAIN, "ABC", 0);
+    }
+
+    @Test
+    public void testNoRotorChoice() {
+        Alphabet abcd = new Alphabet("ABCD");
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation("(AB) (CD)", abcd)));
+        rotors.add(new MovingRotor("I", new Permutation("(ABC)", abcd),
+                                   "A"));
+        Machine config = new Machine(abcd, 3, 2, rotors);
+        try {
+            new KeySearch(config, "ABCDABCDABCDABCDABCD");
+            fail("key search should reject the configuration");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            new Bombe(config, "AB", "BA", 0);
+            fail("bombe should reject the configuration");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package enigma;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static enigma.EnigmaException.*;
+
+/** The binary form of a machine configuration, which loads without
+ *  parsing cycles.  A compiled configuration is, in big-endian order:
+ *  the int MAGIC and the int VERSION; the alphabet size and its
+ *  characters; the numbers of slots and pawls; the number of rotors,
+ *  and for each rotor its type (the byte 'M', 'N', or 'R'), the length
+ *  of its name and its characters, its notches as a mask of
+ *  (size + 63) / 64 longs, and its forward and inverse tables as chars;
+ *  and last, the CRC-32C of everything before it, as an int.
+ *  @author KaitoGarcia
+ */
+class CompiledConfig {
+
+    /** Not instantiable. */
+    private CompiledConfig() {
+    }
+
+    /** Return the compiled form of CONFIG, positioned at its start. */
+    static ByteBuffer encode(Machine config) {
+        Alphabet alphabet = config.alphabet();
+        int size = alphabet.size();
+        List<Rotor> rotors = config.availableRotors();
+        int words = (size + Long.SIZE - 1) / Long.SIZE;
+        long length = HEADER_BYTES + Integer.BYTES
+            + (long) size * Character.BYTES + 4 * Integer.BYTES;
+        for (Rotor r : rotors) {
+            length += 1 + Integer.BYTES
+                + (long) r.name().length() * Character.BYTES
+                + (long) words * Long.BYTES
+                + 2L * size * Character.BYTES;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw error("configuration too large to compile");
+        }
+
+        ByteBuffer result = ByteBuffer.allocate((int) length);
+        result.putInt(MAGIC).putInt(VERSION);
+        result.putInt(size);
+        for (int i = 0; i < size; i += 1) {
+            result.putChar(alphabet.toChar(i));
+        }
+        result.putInt(config.numRotors()).putInt(config.numPawls());
+        result.putInt(rotors.size());
+        for (Rotor r : rotors) {
+            result.put((byte) (r.rotates() ? 'M'
+                               : r.reflecting() ? 'R' : 'N'));
+            result.putInt(r.name().length());
+            for (int i = 0; i < r.name().length(); i += 1) {
+                result.putChar(r.name().charAt(i));
+            }
+            long[] notches = new long[words];
+            for (int p = 0; p < size; p += 1) {
+                if (r.atNotch(p)) {
+                    notches[p / Long.SIZE] |= 1L << (p % Long.SIZE);
+                }
+            }
+            for (long word : notches) {
+                result.putLong(word);
+            }
+            Permutation perm = r.permutation();
+            for (int p = 0; p < size; p += 1) {
+                result.putChar((char) perm.permute(p));
+            }
+            for (int p = 0; p < size; p += 1) {
+                result.putChar((char) perm.invert(p));
+            }
+        }
+        result.putInt(checksum(result, 0, result.position()));
+        return result.flip();
+    }
+
+    /** Return true iff DATA, from its position, starts with the header
+     *  of a compiled configuration (of any version).  DATA's position
+     *  is not changed. */
+    static boolean isCompiled(ByteBuffer data) {
+        return data.remaining() >= Integer.BYTES
+            && data.getInt(data.position()) == MAGIC;
+    }
+
+    /** Return a machine, with no rotors inserted, configured as the
+     *  compiled configuration in DATA, from its position to its limit,
+     *  describes.  DATA's position is advanced to its limit. */
+    static Machine decode(ByteBuffer data) {
+        int start = data.position();
+        if (data.remaining() < HEADER_BYTES + Integer.BYTES
+            || data.getInt(start) != MAGIC) {
+            throw error("not a compiled configuration");
+        }
+        int version = data.getInt(start + Integer.BYTES);
+        if (version != VERSION) {
+            throw error("compiled configuration has version %d, not %d",
+                        version, VERSION);
+        }
+        int end = data.limit() - Integer.BYTES;
+        if (checksum(data, start, end) != data.getInt(end)) {
+            throw error("compiled configuration is corrupt");
+        }
+
+        ByteBuffer body = data.duplicate().limit(end);
+        body.position(start + HEADER_BYTES);
+        try {
+            int size = body.getInt();
+            if (size < 1 || size > Character.MAX_VALUE + 1) {
+                throw error("compiled configuration is corrupt");
+            }
+            char[] chars = new char[size];
+            for (int i = 0; i < size; i += 1) {
+                chars[i] = body.getChar();
+            }
+            Alphabet alphabet = new Alphabet(new String(chars));
+            int numSlots = body.getInt();
+            int numPawls = body.getInt();
+            int count = body.getInt();
+            int words = (size + Long.SIZE - 1) / Long.SIZE;
+            List<Rotor> rotors = new ArrayList<>();
+            for (int k = 0; k < count; k += 1) {
+                rotors.add(rotor(body, alphabet, words));
+            }
+            if (body.hasRemaining()) {
+                throw error("compiled configuration is corrupt");
+            }
+            data.position(data.limit());
+            return new Machine(alphabet, numSlots, numPawls, rotors);
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            throw error("compiled configuration is corrupt");
+        }
+    }
+
+    /** Return the rotor, over ALPHABET, whose description starts at the
+     *  position of BODY, where WORDS is the length of a notch mask. */
+    private static Rotor rotor(ByteBuffer body, Alphabet alphabet,
+                               int words) {
+        int size = alphabet.size();
+        byte type = body.get();
+        int nameLength = body.getInt();
+        if (nameLength < 0 || nameLength > body.remaining()) {
+            throw error("compiled configuration is corrupt");
+        }
+        char[] name = new char[nameLength];
+        for (int i = 0; i < nameLength; i += 1) {
+            name[i] = body.getChar();
+        }
+        StringBuilder notches = new StringBuilder();
+        for (int w = 0; w < words; w += 1) {
+            for (long word = body.getLong(); word != 0; word &= word - 1) {
+                int p = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+                notches.append(alphabet.toChar(p));
+            }
+        }
+        int[] forward = new int[size], inverse = new int[size];
+        for (int p = 0; p < size; p += 1) {
+            forward[p] = body.getChar();
+        }
+        for (int p = 0; p < size; p += 1) {
+            inverse[p] = body.getChar();
+        }
+        Permutation perm = new Permutation(forward, inverse, alphabet);
+        switch (type) {
+        case 'M':
+            return new MovingRotor(new String(name), perm,
+                                   notches.toString());
+        case 'N':
+            return new FixedRotor(new String(name), perm);
+        case 'R':
+            return new Reflector(new String(name), perm);
+        default:
+            throw error("compiled configuration is corrupt");
+        }
+    }
+
+    /** Return the CRC-32C of bytes FROM .. TO-1 of DATA, whose
+     *  position and limit are not changed. */
+    private static int checksum(ByteBuffer data, int from, int to) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate().limit(to).position(from));
+        return (int) crc.getValue();
+    }
+
+    /** First int of every compiled configuration ("\211ENG").  As in
+     *  PNG, the first byte is not ASCII and cannot start UTF-8 text, so
+     *  no configuration in text form begins with it. */
+    static final int MAGIC = 0x89454E47;
+
+    /** Version of the format written by encode. */
+    static final int VERSION = 1;
+
+    /** Bytes in the magic number and version. */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+}
@@ -0,0 +1,134 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author KaitoGarcia
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with rotors of every type. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + "5 3\n"
+        + "I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + "III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "          (RX) (SZ) (TV)\n";
+
+    /** Return the machine described by CONFIG. */
+    private Machine config() {
+        return new ConfigParser(CONFIG).parse();
+    }
+
+    /** Return the message of the EnigmaException thrown when decoding
+     *  DATA, failing if there is none. */
+    private String errorFor(ByteBuffer data) {
+        try {
+            CompiledConfig.decode(data);
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+        fail("no error");
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() {
+        Machine original = config();
+        ByteBuffer data = CompiledConfig.encode(original);
+        assertTrue(CompiledConfig.isCompiled(data));
+        Machine copy = CompiledConfig.decode(data);
+        assertFalse(data.hasRemaining());
+        assertEquals(original.numRotors(), copy.numRotors());
+        assertEquals(original.numPawls(), copy.numPawls());
+        assertEquals(26, copy.alphabet().size());
+        List<Rotor> before = original.availableRotors(),
+            after = copy.availableRotors();
+        assertEquals(before.size(), after.size());
+        for (int k = 0; k < before.size(); k += 1) {
+            Rotor r = before.get(k), s = after.get(k);
+            assertEquals(r.name(), s.name());
+            assertEquals(r.name(), r.getClass(), s.getClass());
+            for (int p = 0; p < 26; p += 1) {
+                assertEquals(msg(r.name(), "wiring at %d", p),
+                             r.permutation().permute(p),
+                             s.permutation().permute(p));
+                assertEquals(msg(r.name(), "notch at %d", p),
+                             r.atNotch(p), s.atNotch(p));
+            }
+        }
+
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        original.insertRotors(rotors);
+        copy.insertRotors(rotors);
+        original.setRotors("AXLE");
+        copy.setRotors("AXLE");
+        original.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        copy.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(original.convert(msg), copy.convert(msg));
+    }
+
+    @Test
+    public void testIsCompiled() {
+        assertFalse(CompiledConfig.isCompiled(ByteBuffer.wrap(
+                                                  CONFIG.getBytes())));
+        assertFalse(CompiledConfig.isCompiled(ByteBuffer.allocate(2)));
+    }
+
+    @Test
+    public void testTextStartingWithOldMagic() {
+        String config = "ENGCABDFHIJKLMOPQRSTUVWXYZ\n"
+            + "3 1\n"
+            + "I MQ      (EFGHIJKLMN) (OPQR) (STUV) (WXY)\n"
+            + "II MF     (AEFVNPQXBGIZ) (CDHJK) (LMORSTUWY)\n"
+            + "B R       (EN) (GC) (AB) (DF) (HI) (JK) (LM) (OP) (QR)\n"
+            + "          (ST) (UV) (WX) (YZ)\n";
+        ByteBuffer data = ByteBuffer.wrap(config.getBytes());
+        assertFalse(CompiledConfig.isCompiled(data));
+        Machine machine = new ConfigParser(config).parse();
+        assertEquals('E', machine.alphabet().toChar(0));
+        assertEquals("not a compiled configuration", errorFor(data));
+    }
+
+    @Test
+    public void testCorrupt() {
+        ByteBuffer data = CompiledConfig.encode(config());
+        data.put(40, (byte) (data.get(40) ^ 1));
+        assertEquals("compiled configuration is corrupt", errorFor(data));
+
+        data = CompiledConfig.encode(config());
+        data.limit(data.limit() - 7);
+        assertEquals("compiled configuration is corrupt", errorFor(data));
+
+        data = CompiledConfig.encode(config());
+        data.putInt(Integer.BYTES, CompiledConfig.VERSION + 1);
+        assertEquals(String.format("compiled configuration has version %d,"
+                                   + " not %d", CompiledConfig.VERSION + 1,
+                                   CompiledConfig.VERSION),
+                     errorFor(data));
+
+        assertEquals("not a compiled configuration",
+                     errorFor(ByteBuffer.wrap(CONFIG.getBytes())));
+    }
+}
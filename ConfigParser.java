@@ -0,0 +1,246 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static enigma.EnigmaException.*;
+
+/** A reader of machine configurations.  A configuration is an alphabet,
+ *  the numbers of slots and pawls, and then any number of rotor
+ *  descriptions, each a name, a type (M, N, or R) immediately followed
+ *  by any notches, and the rotor's wiring as parenthesized cycles, all
+ *  separated by whitespace.  Whitespace inside a cycle is ignored.
+ *
+ *  The text is read once, character by character: each rotor's wiring
+ *  goes straight into a permutation table, without building cycle
+ *  strings, and rotor names are checked for duplicates in a hash set.
+ *  Errors report the line and column where they were found.
+ *  @author KaitoGarcia
+ */
+class ConfigParser {
+
+    /** A parser for the configuration TEXT. */
+    ConfigParser(CharSequence text) {
+        _text = text;
+    }
+
+    /** Return a machine configured as my text describes, with no rotors
+     *  inserted. */
+    Machine parse() {
+        skipSpace();
+        if (atEnd()) {
+            throw error("config empty or no config");
+        }
+        _alphabet = new Alphabet(token());
+        int numRotors = number("invalid num rotors or num pawls");
+        int numPawls = number("invalid num rotors or num pawls");
+
+        List<Rotor> rotors = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        skipSpace();
+        while (!atEnd()) {
+            int line = _line, column = _column;
+            Rotor rotor = rotor();
+            if (!names.add(rotor.name())) {
+                throw errorAt(line, column, "duplicate rotor %s",
+                              rotor.name());
+            }
+            rotors.add(rotor);
+            skipSpace();
+        }
+        return new Machine(_alphabet, numRotors, numPawls, rotors);
+    }
+
+    /** Return the rotor whose description starts at the next
+     *  character. */
+    private Rotor rotor() {
+        int line = _line, column = _column;
+        String name = token();
+        if (name.indexOf('(') >= 0 || name.indexOf(')') >= 0) {
+            throw errorAt(line, column, "Wrong rotor name format");
+        }
+        skipSpace();
+        if (atEnd()) {
+            throw errorAt(_line, _column, "bad rotor description");
+        }
+        line = _line;
+        column = _column;
+        char type = next();
+        int notchStart = _pos;
+        while (!atEnd() && !Character.isWhitespace(peek())) {
+            char ch = peek();
+            if (type == 'M' && !_alphabet.contains(ch)) {
+                throw errorAt(_line, _column, "no Notch in alphabet");
+            }
+            next();
+        }
+        String notches = _text.subSequence(notchStart, _pos).toString();
+        Permutation perm = wiring();
+
+        switch (type) {
+        case 'M':
+            if (notches.isEmpty()) {
+                throw errorAt(line, column, "No notch");
+            }
+            return new MovingRotor(name, perm, notches);
+        case 'N':
+            if (!notches.isEmpty()) {
+                throw errorAt(line, column, "Notch for fixed rotor detected.");
+            }
+            return new FixedRotor(name, perm);
+        case 'R':
+            if (!notches.isEmpty()) {
+                throw errorAt(line, column, "Notch for reflector detected.");
+            }
+            if (!perm.derangement()) {
+                throw errorAt(line, column, "Reflector is not a derangement.");
+            }
+            return new Reflector(name, perm);
+        default:
+            throw errorAt(line, column, "Wrong rotor type. Must be M, N or R.");
+        }
+    }
+
+    /** Return the permutation given by the cycles that follow, up to the
+     *  first token that does not start with '('. */
+    private Permutation wiring() {
+        int[] forward = new int[_alphabet.size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = -1;
+        }
+        skipSpace();
+        while (!atEnd() && peek() == '(') {
+            int line = _line, column = _column;
+            next();
+            int first = -1, prev = -1;
+            while (true) {
+                skipSpace();
+                if (atEnd()) {
+                    throw errorAt(line, column, "unclosed cycle");
+                }
+                int charLine = _line, charColumn = _column;
+                char ch = next();
+                if (ch == ')') {
+                    break;
+                } else if (ch == '(') {
+                    throw errorAt(charLine, charColumn, "unclosed cycle");
+                } else if (!_alphabet.contains(ch)) {
+                    throw errorAt(charLine, charColumn,
+                                  "character %c not in alphabet", ch);
+                }
+                int index = _alphabet.toInt(ch);
+                if (forward[index] != -1 || index == first
+                    || index == prev) {
+                    throw errorAt(charLine, charColumn,
+                                  "character %c repeated in cycles", ch);
+                }
+                if (first == -1) {
+                    first = index;
+                } else {
+                    forward[prev] = index;
+                }
+                prev = index;
+            }
+            if (first != -1) {
+                forward[prev] = first;
+            }
+            skipSpace();
+        }
+        for (int i = 0; i < forward.length; i += 1) {
+            if (forward[i] == -1) {
+                forward[i] = i;
+            }
+        }
+        return new Permutation(forward, _alphabet);
+    }
+
+    /** Return the nonnegative integer that is the next token, throwing
+     *  an error with message MESSAGE if there is none. */
+    private int number(String message) {
+        skipSpace();
+        int line = _line, column = _column;
+        int result = 0, digits = 0;
+        while (!atEnd() && !Character.isWhitespace(peek())) {
+            char ch = next();
+            if (ch < '0' || ch > '9' || result > MAX_NUMBER) {
+                throw errorAt(line, column, message);
+            }
+            result = result * 10 + (ch - '0');
+            digits += 1;
+        }
+        if (digits == 0) {
+            throw errorAt(line, column, message);
+        }
+        return result;
+    }
+
+    /** Return the token starting at the next character, which must not
+     *  be whitespace. */
+    private String token() {
+        int start = _pos;
+        while (!atEnd() && !Character.isWhitespace(peek())) {
+            next();
+        }
+        return _text.subSequence(start, _pos).toString();
+    }
+
+    /** Skip whitespace. */
+    private void skipSpace() {
+        while (!atEnd() && Character.isWhitespace(peek())) {
+            next();
+        }
+    }
+
+    /** Return true iff all of my text has been read. */
+    private boolean atEnd() {
+        return _pos == _text.length();
+    }
+
+    /** Return the next character without reading it. */
+    private char peek() {
+        return _text.charAt(_pos);
+    }
+
+    /** Read and return the next character, keeping count of lines and
+     *  columns.  A line ends at '\n', or at a '\r' not followed by
+     *  '\n'. */
+    private char next() {
+        char ch = _text.charAt(_pos);
+        _pos += 1;
+        if (ch == '\n' || ch == '\r' && (atEnd() || peek() != '\n')) {
+            _line += 1;
+            _column = 1;
+        } else {
+            _column += 1;
+        }
+        return ch;
+    }
+
+    /** Return an EnigmaException for an error at line LINE, column
+     *  COLUMN, with a message formed from MSGFORMAT and ARGS as for
+     *  String.format. */
+    private static EnigmaException errorAt(int line, int column,
+                                           String msgFormat,
+                                           Object... args) {
+        return error("line %d, column %d: %s", line, column,
+                     String.format(msgFormat, args));
+    }
+
+    /** Largest value whose product with 10, plus a digit, fits in an
+     *  int. */
+    private static final int MAX_NUMBER = (Integer.MAX_VALUE - 9) / 10;
+
+    /** The configuration. */
+    private final CharSequence _text;
+
+    /** Index in _text of the next character. */
+    private int _pos;
+
+    /** Line and column of the next character, numbering from 1. */
+    private int _line = 1, _column = 1;
+
+    /** The alphabet, once read. */
+    private Alphabet _alphabet;
+}
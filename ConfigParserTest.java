@@ -0,0 +1,95 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigParser class.
+ *  @author KaitoGarcia
+ */
+public class ConfigParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with the rotors I, Beta, and B, whose cycles are
+     *  split across tokens and lines. */
+    private static final String CONFIG =
+        "  ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + "  5 3\n"
+        + "  I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "  Beta N    (ALBEVFCYODJWUGNMQ TZSKPR)(HIX)\r\n"
+        + "  B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "            (RX) (SZ) (TV)\n";
+
+    /** Return the message of the EnigmaException thrown when parsing
+     *  TEXT, failing if there is none. */
+    private String errorFor(String text) {
+        try {
+            new ConfigParser(text).parse();
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+        fail("no error for " + text);
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testParse() {
+        Machine m = new ConfigParser(CONFIG).parse();
+        assertEquals(5, m.numRotors());
+        assertEquals(3, m.numPawls());
+        assertEquals(26, m.alphabet().size());
+        List<Rotor> rotors = m.availableRotors();
+        assertEquals(3, rotors.size());
+        String[] names = { "I", "Beta", "B" };
+        for (int k = 0; k < names.length; k += 1) {
+            Rotor r = rotors.get(k);
+            assertEquals(names[k], r.name());
+            Permutation expected = new Permutation(NAVALA.get(names[k]),
+                                                   UPPER);
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(msg(names[k], "wrong wiring of %c",
+                                 UPPER.toChar(c)),
+                             expected.permute(c), r.permutation().permute(c));
+            }
+        }
+        assertTrue(rotors.get(0).rotates());
+        assertTrue(rotors.get(0).atNotch('Q' - 'A'));
+        assertFalse(rotors.get(1).rotates());
+        assertTrue(rotors.get(2).reflecting());
+    }
+
+    @Test
+    public void testErrorPositions() {
+        assertEquals("line 4, column 3: duplicate rotor I",
+                     errorFor("AB\n 2 1\nI MA (AB)\n  I R (AB)\n"));
+        assertEquals("line 3, column 11: character C not in alphabet",
+                     errorFor("AB\n2 1\nI MA (A  BC)\n"));
+        assertEquals("line 4, column 1: character A repeated in cycles",
+                     errorFor("AB\n2 1\nI N (A\r\nA)\n"));
+        assertEquals("line 3, column 5: unclosed cycle",
+                     errorFor("AB\n2 1\nI N (AB\n"));
+        assertEquals("line 2, column 3: invalid num rotors or num pawls",
+                     errorFor("AB\n2 x\n"));
+        assertEquals("line 3, column 5: no Notch in alphabet",
+                     errorFor("AB\n2 1\nI MAC (AB)\n"));
+        assertEquals("line 3, column 3: No notch",
+                     errorFor("AB\n2 1\nI M (AB)\n"));
+        assertEquals("line 3, column 3: Reflector is not a derangement.",
+                     errorFor("ABC\n2 1\nB R (AB)\n"));
+        assertEquals("line 2, column 1: Wrong rotor name format",
+                     errorFor("AB 2 1\n(AB) R\n"));
+        assertEquals("config empty or no config", errorFor(" \n"));
+    }
+}
@@ -0,0 +1,205 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted messages in groups of five, encoding characters
+ *  straight into a reusable byte buffer and inserting the blanks between
+ *  groups as it goes.  The buffer is emptied only when it fills or when
+ *  the writer is flushed.  The buffer either belongs to the writer and
+ *  is drained into a channel, or is a memory-mapped window of the output
+ *  file, in which case draining maps the next window.  Characters of a
+ *  single-byte alphabet are stored as bytes without an encoder.
+ *  @author KaitoGarcia
+ */
+class GroupWriter {
+
+    /** A writer to OUT that encodes characters of ALPHABET, blanks, and
+     *  line terminators in CHARSET. */
+    GroupWriter(WritableByteChannel out, Charset charset, Alphabet alphabet) {
+        _out = out;
+        _file = null;
+        _window = 0;
+        _byteLimit = MessageReader.byteLimit(alphabet, charset);
+        _encoder = newEncoder(charset);
+        _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /** A writer that encodes characters of ALPHABET, blanks, and line
+     *  terminators in CHARSET into mapped windows of OUT, which must be
+     *  open for reading and writing.  The first window is ESTIMATE bytes
+     *  (the expected size of the output) and later ones are WINDOW bytes,
+     *  or MessageReader.MAX_CHAR_BYTES if that is larger.  Closing the
+     *  writer truncates OUT to the bytes written. */
+    GroupWriter(FileChannel out, Charset charset, Alphabet alphabet,
+                long estimate, int window) {
+        _out = out;
+        _file = out;
+        _window = Math.max(window, MessageReader.MAX_CHAR_BYTES);
+        _byteLimit = MessageReader.byteLimit(alphabet, charset);
+        _encoder = newEncoder(charset);
+        mapWindow(0, Math.max(1, Math.min(estimate, _window)));
+    }
+
+    /** Return an encoder for CHARSET that replaces bad input. */
+    private static CharsetEncoder newEncoder(Charset charset) {
+        return charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /** Write message character C, preceded by a blank if it starts a new
+     *  group of five on the current line. */
+    void put(char c) {
+        if (_group == GROUP_SIZE) {
+            write(' ');
+            _group = 0;
+        }
+        write(c);
+        _group += 1;
+    }
+
+    /** End the current message line with a newline. */
+    void endLine() {
+        write('\n');
+        _group = 0;
+        _lineStart = _bytes.position();
+    }
+
+    /** Write a CRLF line terminator. */
+    void crlf() {
+        write('\r');
+        write('\n');
+        _group = 0;
+        _lineStart = _bytes.position();
+    }
+
+    /** Discard what has been written of the current line, if it has not
+     *  yet left the buffer. */
+    void abandonLine() {
+        if (_lineStart >= 0) {
+            _bytes.position(_lineStart);
+            _group = 0;
+            _pending.clear();
+        }
+    }
+
+    /** Write everything buffered to the output channel.  A mapped writer
+     *  has nothing to flush. */
+    void flush() {
+        if (_file == null) {
+            drain();
+        }
+    }
+
+    /** Flush me and, if I am mapped, truncate my file to the bytes
+     *  written and close it. */
+    void close() {
+        flush();
+        if (_file != null) {
+            try {
+                _file.truncate(_windowStart + _bytes.position());
+                _file.close();
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        }
+    }
+
+    /** Store character C in the buffer. */
+    private void write(char c) {
+        if (c < _byteLimit) {
+            if (!_bytes.hasRemaining()) {
+                drain();
+            }
+            _bytes.put((byte) c);
+            return;
+        }
+        _pending.put(c);
+        if (Character.isHighSurrogate(c) && _pending.position() == 1) {
+            return;
+        }
+        _pending.flip();
+        CoderResult result = _encoder.encode(_pending, _bytes, false);
+        while (result.isOverflow()) {
+            drain();
+            result = _encoder.encode(_pending, _bytes, false);
+        }
+        _pending.compact();
+    }
+
+    /** Empty the buffer: write it to _out, or map the next window. */
+    private void drain() {
+        boolean atLineStart = _bytes.position() == _lineStart;
+        if (_file != null) {
+            mapWindow(_windowStart + _bytes.position(), _window);
+        } else {
+            _bytes.flip();
+            try {
+                while (_bytes.hasRemaining()) {
+                    _out.write(_bytes);
+                }
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+            _bytes.clear();
+        }
+        _lineStart = atLineStart ? 0 : -1;
+    }
+
+    /** Map SIZE bytes of _file starting at offset START as the buffer. */
+    private void mapWindow(long start, long size) {
+        try {
+            _bytes = _file.map(FileChannel.MapMode.READ_WRITE, start, size);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _windowStart = start;
+    }
+
+    /** Size of the buffer of a writer that is not mapped. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of characters in a group. */
+    private static final int GROUP_SIZE = 5;
+
+    /** Destination of output. */
+    private final WritableByteChannel _out;
+
+    /** Destination of output when it is mapped, else null. */
+    private final FileChannel _file;
+
+    /** Size of mapped windows after the first. */
+    private final int _window;
+
+    /** Characters below this value are written as single bytes. */
+    private final int _byteLimit;
+
+    /** Encoder for characters that are not written as single bytes. */
+    private final CharsetEncoder _encoder;
+
+    /** Characters waiting to be encoded (at most a surrogate pair). */
+    private final CharBuffer _pending = CharBuffer.allocate(2);
+
+    /** Output not yet written, or the current window of _file. */
+    private ByteBuffer _bytes;
+
+    /** Offset in _file of the current window. */
+    private long _windowStart;
+
+    /** Characters in the current group of the current line. */
+    private int _group;
+
+    /** Position in _bytes at which the current line starts, or -1 if
+     *  part of the line has left the buffer. */
+    private int _lineStart;
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author KaitoGarcia
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Destination of the writer under test. */
+    private ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+    /** Return a writer of ALPHA characters in CHARSET to _bytes. */
+    private GroupWriter writer(Alphabet alpha, Charset charset) {
+        return new GroupWriter(Channels.newChannel(_bytes), charset, alpha);
+    }
+
+    /** Write the characters of MSG to OUT as one message line. */
+    private void putLine(GroupWriter out, String msg) {
+        for (int i = 0; i < msg.length(); i += 1) {
+            out.put(msg.charAt(i));
+        }
+        out.endLine();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroups() {
+        GroupWriter out = writer(UPPER, StandardCharsets.US_ASCII);
+        putLine(out, "ABCDEFGHIJKL");
+        putLine(out, "ABCDE");
+        putLine(out, "");
+        out.crlf();
+        putLine(out, "ABCDEFGHIJ");
+        assertEquals("nothing should be written before a flush",
+                     0, _bytes.size());
+        out.flush();
+        assertEquals("ABCDE FGHIJ KL\nABCDE\n\n\r\nABCDE FGHIJ\n",
+                     new String(_bytes.toByteArray(),
+                                StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testAbandonLine() {
+        GroupWriter out = writer(UPPER, StandardCharsets.US_ASCII);
+        putLine(out, "ABCDEF");
+        out.put('X');
+        out.put('Y');
+        out.abandonLine();
+        putLine(out, "ABCDEFG");
+        out.flush();
+        assertEquals("ABCDE F\nABCDE FG\n",
+                     new String(_bytes.toByteArray(),
+                                StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testFillsBuffer() {
+        GroupWriter out = writer(UPPER, StandardCharsets.US_ASCII);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < GroupWriter.BUFFER_SIZE; i += 1) {
+            out.put('Z');
+            expected.append(i > 0 && i % 5 == 0 ? " Z" : "Z");
+        }
+        out.endLine();
+        assertTrue("a full buffer should be written", _bytes.size() > 0);
+        out.flush();
+        assertEquals(expected.append('\n').toString(),
+                     new String(_bytes.toByteArray(),
+                                StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testAbandonAfterDrainAtBlank() {
+        GroupWriter out = writer(UPPER, StandardCharsets.US_ASCII);
+        int prefix = GroupWriter.BUFFER_SIZE % 6;
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i < prefix; i += 1) {
+            expected.append('A');
+        }
+        putLine(out, expected.toString());
+        expected.append('\n');
+        int count = GroupWriter.BUFFER_SIZE / 6 * 5 + 1;
+        for (int i = 0; i < count; i += 1) {
+            out.put('Z');
+            expected.append(i > 0 && i % 5 == 0 ? " Z" : "Z");
+        }
+        assertEquals("the buffer should have filled at a group blank",
+                     GroupWriter.BUFFER_SIZE, _bytes.size());
+        out.abandonLine();
+        out.flush();
+        assertEquals("a line that has left the buffer should be kept whole",
+                     expected.toString(),
+                     new String(_bytes.toByteArray(),
+                                StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testEncodes() {
+        String chars = "\u00c4\u00d6\u00dc\u03a9";
+        GroupWriter out = writer(new Alphabet(chars), StandardCharsets.UTF_8);
+        putLine(out, chars + chars);
+        out.flush();
+        assertEquals(chars + chars.charAt(0) + " " + chars.substring(1)
+                     + "\n",
+                     new String(_bytes.toByteArray(),
+                                StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,494 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on a message from a machine of a given
+ *  configuration.  The search tries every choice of rotors that the
+ *  configuration allows (a reflector, then non-moving rotors, then
+ *  numPawls() moving rotors, none repeated) at every setting of every
+ *  slot, with no plugboard, and scores each decryption by its index of
+ *  coincidence.  It keeps the best few candidates and then hill-climbs
+ *  a plugboard for each, one pair at a time, under a Fitness.
+ *
+ *  Decryptions step a PackedRotors directly, so no machines, strings,
+ *  or permutations are built per candidate.  The first phase is split
+ *  among the threads of a fork/join pool by the units of a KeySpace, one
+ *  rotor choice and first setting per task; a decryption is abandoned
+ *  as soon as its score can no longer reach the worst of the best
+ *  candidates found so far by any thread.
+ *  @author KaitoGarcia
+ */
+class KeySearch {
+
+    /** A search for the key of CIPHERTEXT, which was produced by a
+     *  machine configured as CONFIG.  Blanks and line terminators in
+     *  CIPHERTEXT are ignored. */
+    KeySearch(Machine config, String ciphertext) {
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        _numSlots = config.numRotors();
+        String text = ciphertext.replaceAll("[ \t\r\n]", "");
+        if (text.length() < 2) {
+            throw error("ciphertext too short");
+        }
+        _cipher = new int[text.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            _cipher[i] = _alphabet.toInt(text.charAt(i));
+        }
+        _keys = new KeySpace(config);
+        _fitness = indexOfCoincidence(_size);
+        _maxPlugs = _size / 2;
+    }
+
+    /** Keep the best COUNT candidates of the first phase for the
+     *  plugboard search (default 10). */
+    void setCandidates(int count) {
+        if (count < 1) {
+            throw error("must keep at least one candidate");
+        }
+        _candidates = count;
+    }
+
+    /** Use FITNESS to score decryptions in the plugboard search (by
+     *  default, the index of coincidence). */
+    void setFitness(Fitness fitness) {
+        _fitness = fitness;
+    }
+
+    /** Allow at most PAIRS plugboard pairs (default, half the alphabet
+     *  size). */
+    void setMaxPlugs(int pairs) {
+        _maxPlugs = pairs;
+    }
+
+    /** Report progress and throughput of the first phase to REPORTER
+     *  about every INTERVAL milliseconds, and once at its end. */
+    void setProgress(Consumer<String> reporter, long interval) {
+        _reporter = reporter;
+        _interval = interval * NANOS_PER_MILLI;
+    }
+
+    /** Return the number of keys, without plugboards, in the first
+     *  phase. */
+    long keysTotal() {
+        return _keys.keysTotal();
+    }
+
+    /** Return the number of keys tried so far in the first phase. */
+    long keysTried() {
+        return _tried.sum();
+    }
+
+    /** Return the best keys found using the threads of POOL, best
+     *  first. */
+    List<Result> search(ForkJoinPool pool) {
+        _start = System.nanoTime();
+        _nextReport.set(_start + _interval);
+        Top best = _keys.search(pool, this::searchUnit, Top::merge);
+        report();
+        List<Candidate> found = best.sorted();
+        List<ForkJoinTask<Result>> climbs = new ArrayList<>();
+        for (Candidate c : found) {
+            climbs.add(pool.submit(ForkJoinTask.adapt(() -> climb(c))));
+        }
+        List<Result> result = new ArrayList<>();
+        for (ForkJoinTask<Result> climb : climbs) {
+            result.add(climb.join());
+        }
+        result.sort(Comparator.comparingDouble(Result::score).reversed());
+        return result;
+    }
+
+    /** Return the best candidates among the keys of unit UNIT. */
+    private Top searchUnit(int unit) {
+        Top top = new Top(_candidates);
+        int[] counts = new int[_size];
+        _keys.forEachKey(unit, (order, settings, cursor) -> {
+            long threshold = Math.max(top.threshold(), _threshold.get());
+            long score = score(cursor, counts, threshold);
+            if (score >= threshold && top.offer(order, settings, score)) {
+                _threshold.accumulateAndGet(top.threshold(), Math::max);
+            }
+        });
+        _tried.add(_keys.keysPerUnit());
+        maybeReport();
+        return top;
+    }
+
+    /** Return the score (the sum over letters of N * (N - 1), where N is
+     *  the letter's count) of the decryption of _cipher by CURSOR, using
+     *  COUNTS as scratch space, or -1 if the score is certain to be
+     *  below THRESHOLD.  CURSOR is stepped. */
+    private long score(PackedRotors cursor, int[] counts, long threshold) {
+        Arrays.fill(counts, 0);
+        int n = _cipher.length;
+        long sum = 0;
+        int most = 0;
+        for (int i = 0; i < n; i += 1) {
+            cursor.step();
+            int p = cursor.convert(_cipher[i]);
+            int m = counts[p];
+            sum += 2 * m;
+            counts[p] = m + 1;
+            most = Math.max(most, m + 1);
+            if ((i & PRUNE_MASK) == PRUNE_MASK) {
+                long rest = n - 1 - i;
+                if (sum + rest * (2 * most + rest - 1) < threshold) {
+                    return -1;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /** Return the key found by hill-climbing a plugboard for candidate
+     *  C.  Each round applies the single change (joining two letters,
+     *  after freeing them from their partners, or separating a pair)
+     *  that most improves the fitness of the decryption, until none
+     *  does. */
+    private Result climb(Candidate c) {
+        int n = _cipher.length;
+        PackedRotors cursor = new PackedRotors(_keys.wiring(c._order));
+        for (int k = 1; k < _numSlots; k += 1) {
+            cursor.set(k, c._settings[k]);
+        }
+        int[] core = new int[n * _size];
+        for (int i = 0, j = 0; i < n; i += 1) {
+            cursor.step();
+            for (int x = 0; x < _size; x += 1, j += 1) {
+                core[j] = cursor.convert(x);
+            }
+        }
+
+        int[] plug = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            plug[x] = x;
+        }
+        int[] text = new int[n];
+        int[] trial = new int[_size];
+        double best = fitness(core, plug, text);
+        int pairs = 0;
+        while (true) {
+            double bestTrial = best;
+            int bestA = -1, bestB = -1;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    int change = rewire(plug, a, b, trial);
+                    if (pairs + change > _maxPlugs) {
+                        continue;
+                    }
+                    double f = fitness(core, trial, text);
+                    if (f > bestTrial) {
+                        bestTrial = f;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (bestA == -1) {
+                break;
+            }
+            pairs += rewire(plug, bestA, bestB, trial);
+            System.arraycopy(trial, 0, plug, 0, _size);
+            best = bestTrial;
+        }
+        return new Result(c, plug, best);
+    }
+
+    /** Set TRIAL to PLUG with A and B joined, each first freed from its
+     *  partner, or separated if they are already joined.  Return the
+     *  resulting change in the number of pairs. */
+    private int rewire(int[] plug, int a, int b, int[] trial) {
+        System.arraycopy(plug, 0, trial, 0, _size);
+        int before = 0;
+        if (plug[a] == b) {
+            trial[a] = a;
+            trial[b] = b;
+            return -1;
+        }
+        if (plug[a] != a) {
+            trial[plug[a]] = plug[a];
+            before += 1;
+        }
+        if (plug[b] != b) {
+            trial[plug[b]] = plug[b];
+            before += 1;
+        }
+        trial[a] = b;
+        trial[b] = a;
+        return 1 - before;
+    }
+
+    /** Return the fitness of the decryption of _cipher with plugboard
+     *  PLUG, where CORE[I * _size + X] is the conversion of X by the
+     *  rotors at keystroke I.  TEXT receives the decryption. */
+    private double fitness(int[] core, int[] plug, int[] text) {
+        for (int i = 0, row = 0; i < text.length; i += 1, row += _size) {
+            text[i] = plug[core[row + plug[_cipher[i]]]];
+        }
+        return _fitness.score(text);
+    }
+
+    /** Report progress if a report is due. */
+    private void maybeReport() {
+        long now = System.nanoTime();
+        long due = _nextReport.get();
+        if (_reporter != null && now >= due
+            && _nextReport.compareAndSet(due, now + _interval)) {
+            report();
+        }
+    }
+
+    /** Report the progress and throughput of the first phase. */
+    private void report() {
+        if (_reporter == null) {
+            return;
+        }
+        long tried = keysTried(), total = keysTotal();
+        double seconds =
+            Math.max(1, System.nanoTime() - _start) / (double) NANOS_PER_SEC;
+        _reporter.accept(String.format("%d of %d keys (%.1f%%), %.0f keys/s",
+                                       tried, total, 100.0 * tried / total,
+                                       tried / seconds));
+    }
+
+    /** A measure of how much a decryption looks like plaintext: the
+     *  higher the better. */
+    interface Fitness {
+        /** Return the fitness of TEXT, a sequence of alphabet indices. */
+        double score(int[] text);
+    }
+
+    /** Return the index of coincidence of texts in an alphabet of SIZE
+     *  characters, as a Fitness. */
+    static Fitness indexOfCoincidence(int size) {
+        return text -> {
+            int[] counts = new int[size];
+            long sum = 0;
+            for (int c : text) {
+                sum += 2 * counts[c];
+                counts[c] += 1;
+            }
+            return (double) sum / ((long) text.length * (text.length - 1));
+        };
+    }
+
+    /** Return a Fitness that is the mean log-probability of the N-grams
+     *  of a text in ALPHABET, estimated from their counts in SAMPLE.
+     *  Characters of SAMPLE outside ALPHABET separate N-grams. */
+    static Fitness ngrams(Alphabet alphabet, int n, CharSequence sample) {
+        int size = alphabet.size();
+        long cells = 1;
+        for (int i = 0; i < n; i += 1) {
+            cells *= size;
+            if (cells > MAX_NGRAM_CELLS) {
+                throw error("n-gram table too large");
+            }
+        }
+        long[] counts = new long[(int) cells];
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < sample.length(); i += 1) {
+            char ch = sample.charAt(i);
+            if (!alphabet.contains(ch)) {
+                run = 0;
+                continue;
+            }
+            index = (int) ((index * (long) size + alphabet.toInt(ch))
+                           % cells);
+            run += 1;
+            if (run >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("sample has no %d-grams", n);
+        }
+        double[] logs = new double[counts.length];
+        double floor = Math.log(UNSEEN_NGRAM / total);
+        for (int i = 0; i < logs.length; i += 1) {
+            logs[i] = counts[i] == 0 ? floor
+                : Math.log((double) counts[i] / total);
+        }
+        int cellCount = (int) cells;
+        return text -> {
+            if (text.length < n) {
+                return floor;
+            }
+            double sum = 0;
+            int idx = 0;
+            for (int i = 0; i < text.length; i += 1) {
+                idx = (int) ((idx * (long) size + text[i]) % cellCount);
+                if (i >= n - 1) {
+                    sum += logs[idx];
+                }
+            }
+            return sum / (text.length - n + 1);
+        };
+    }
+
+    /** A key found by the first phase: a rotor choice and settings. */
+    private static final class Candidate {
+
+        /** The key with rotor choice ORDER and SETTINGS, whose score is
+         *  SCORE. */
+        Candidate(int order, int[] settings, long score) {
+            _order = order;
+            _settings = settings;
+            _score = score;
+        }
+
+        /** Index of the rotor choice. */
+        private final int _order;
+
+        /** Setting of each slot. */
+        private final int[] _settings;
+
+        /** Score of the decryption without a plugboard. */
+        private final long _score;
+    }
+
+    /** The best candidates seen by a task: at most a fixed number, with
+     *  the lowest-scoring on top of a heap. */
+    private static final class Top {
+
+        /** An empty set holding at most CAPACITY candidates. */
+        Top(int capacity) {
+            _capacity = capacity;
+        }
+
+        /** Return the score a candidate must reach to be kept. */
+        long threshold() {
+            return _heap.size() < _capacity ? 0 : _heap.peek()._score;
+        }
+
+        /** Keep the key with rotor choice ORDER and SETTINGS, whose score
+         *  is SCORE, if it is among the best.  Return true iff it is. */
+        boolean offer(int order, int[] settings, long score) {
+            if (_heap.size() == _capacity) {
+                if (score <= _heap.peek()._score) {
+                    return false;
+                }
+                _heap.poll();
+            }
+            _heap.add(new Candidate(order, settings.clone(), score));
+            return true;
+        }
+
+        /** Add OTHER's candidates to mine, keeping the best, and return
+         *  me. */
+        Top merge(Top other) {
+            for (Candidate c : other._heap) {
+                offer(c._order, c._settings, c._score);
+            }
+            return this;
+        }
+
+        /** Return my candidates, best first. */
+        List<Candidate> sorted() {
+            List<Candidate> result = new ArrayList<>(_heap);
+            result.sort(Comparator.comparingLong(
+                            (Candidate c) -> c._score).reversed());
+            return result;
+        }
+
+        /** Most candidates kept. */
+        private final int _capacity;
+
+        /** The candidates, worst first. */
+        private final PriorityQueue<Candidate> _heap =
+            new PriorityQueue<>(Comparator.comparingLong(c -> c._score));
+    }
+
+    /** A key found by the search, and the fitness of the decryption
+     *  under it. */
+    final class Result extends KeySpace.Key {
+
+        /** The key of candidate C with the plugboard PLUG (PLUG[X] is
+         *  the partner of X, or X), whose fitness is SCORE. */
+        private Result(Candidate c, int[] plug, double score) {
+            super(_keys, c._order, c._settings, plug);
+            _score = score;
+        }
+
+        /** Return the fitness of the decryption under this key. */
+        double score() {
+            return _score;
+        }
+
+        /** Fitness of the decryption. */
+        private final double _score;
+    }
+
+    /** A decryption's score is checked against the threshold once every
+     *  PRUNE_MASK + 1 characters. */
+    private static final int PRUNE_MASK = 7;
+
+    /** Largest number of cells in an n-gram table. */
+    private static final long MAX_NGRAM_CELLS = 1 << 24;
+
+    /** Count assumed for an n-gram absent from a sample. */
+    private static final double UNSEEN_NGRAM = 0.01;
+
+    /** Nanoseconds per millisecond and per second. */
+    private static final long NANOS_PER_MILLI = 1_000_000L,
+        NANOS_PER_SEC = 1_000_000_000L;
+
+    /** Alphabet of the machines. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of slots in the machines. */
+    private final int _numSlots;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Keys of the first phase. */
+    private final KeySpace _keys;
+
+    /** Candidates kept for the plugboard search. */
+    private int _candidates = DEFAULT_CANDIDATES;
+
+    /** Default for _candidates. */
+    static final int DEFAULT_CANDIDATES = 10;
+
+    /** Scoring for the plugboard search. */
+    private Fitness _fitness;
+
+    /** Most plugboard pairs. */
+    private int _maxPlugs;
+
+    /** Destination of progress reports, or null. */
+    private Consumer<String> _reporter;
+
+    /** Nanoseconds between progress reports. */
+    private long _interval;
+
+    /** Start of the current search, from System.nanoTime. */
+    private long _start;
+
+    /** Time at which the next progress report is due. */
+    private final AtomicLong _nextReport = new AtomicLong();
+
+    /** Keys tried in the first phase. */
+    private final LongAdder _tried = new LongAdder();
+
+    /** Lowest score that can still be among the best candidates, as
+     *  known to all threads. */
+    private final AtomicLong _threshold = new AtomicLong();
+}
@@ -0,0 +1,121 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author KaitoGarcia
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A message, without blanks. */
+    private static final String PLAIN =
+        ("IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES IT WAS THE AGE "
+         + "OF WISDOM IT WAS THE AGE OF FOOLISHNESS IT WAS THE EPOCH OF "
+         + "BELIEF IT WAS THE EPOCH OF INCREDULITY IT WAS THE SEASON OF "
+         + "LIGHT IT WAS THE SEASON OF DARKNESS IT WAS THE SPRING OF HOPE "
+         + "IT WAS THE WINTER OF DESPAIR WE HAD EVERYTHING BEFORE US WE "
+         + "HAD NOTHING BEFORE US").replace(" ", "");
+
+    /** English text, other than PLAIN, from which to take n-grams. */
+    private static final String SAMPLE =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD MADE OF "
+        + "SLIDING FOLDING ROSEWOOD NEATLY PUT IT ALL TOGETHER IN ITS CASE "
+        + "IT LAY COMPACTLY FOLDED INTO NEARLY NOTHING BUT HE OPENED OUT "
+        + "THE HINGES PUSHED AND PULLED THE JOINTS AND HINGES TILL IT "
+        + "LOOKED ALL SQUARES AND OBLONGS LIKE A COMPLICATED FIGURE IN THE "
+        + "SECOND BOOK OF EUCLID THIS HE PERCHED UPON A TRIPOD CROUCHED "
+        + "BENEATH ITS DUSKY COVER STRETCHED HIS HAND ENFORCING SILENCE "
+        + "SAID BE MOTIONLESS I BEG YOU MYSTIC AWFUL WAS THE PROCESS "
+        + "THERE IS NO THEORY OF THE EVENTS WHICH HAPPEN TO THE TRAVELLER "
+        + "WHEN HE SETS OUT ON THE ROAD AND THE WEATHER TURNS AGAINST HIM";
+
+    /** Return PLAIN encrypted with the rotors ROTORS at SETTING and the
+     *  plugboard CYCLES on navalMachine(). */
+    private String encrypt(String[] rotors, String setting, String cycles) {
+        return navalEncrypt(PLAIN, rotors, setting, cycles);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRotorsAndSetting() {
+        String[] rotors = { "B", "II", "III", "I" };
+        KeySearch search =
+            new KeySearch(navalMachine(), encrypt(rotors, "KFR", ""));
+        assertEquals(6 * 26 * 26 * 26, search.keysTotal());
+        AtomicInteger reports = new AtomicInteger();
+        search.setProgress(line -> reports.incrementAndGet(), 0);
+        List<KeySearch.Result> found;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            found = search.search(pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(KeySearch.DEFAULT_CANDIDATES, found.size());
+        assertEquals(search.keysTotal(), search.keysTried());
+        assertTrue("no progress reported", reports.get() > 0);
+        KeySearch.Result best = found.get(0);
+        assertEquals(Arrays.asList(rotors), Arrays.asList(best.rotors()));
+        assertEquals("KFR", best.setting());
+        assertEquals("", best.plugboard());
+        assertEquals("* B II III I KFR", best.toString());
+    }
+
+    @Test
+    public void testPlugboard() {
+        String[] rotors = { "B", "III", "I", "II" };
+        String cycles = "(AT) (MR) (OS)";
+        KeySearch search = new KeySearch(navalMachine(),
+                                         encrypt(rotors, "DQX", cycles));
+        search.setFitness(KeySearch.ngrams(UPPER, 2, SAMPLE));
+        KeySearch.Result best;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            best = search.search(pool).get(0);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Arrays.asList(rotors), Arrays.asList(best.rotors()));
+        assertEquals("DQX", best.setting());
+        assertEquals(cycles, best.plugboard());
+        Machine m = navalMachine();
+        m.insertRotors(best.rotors());
+        m.setRotors(best.setting());
+        m.setPlugboard(new Permutation(best.plugboard(), UPPER));
+        assertEquals(PLAIN, m.convert(encrypt(rotors, "DQX", cycles)));
+    }
+
+    @Test
+    public void testNgrams() {
+        KeySearch.Fitness fitness = KeySearch.ngrams(UPPER, 3, SAMPLE);
+        int[] english = new int[PLAIN.length()];
+        int[] scrambled = new int[PLAIN.length()];
+        for (int i = 0; i < english.length; i += 1) {
+            english[i] = UPPER.toInt(PLAIN.charAt(i));
+            scrambled[i] = (english[i] * 7 + 3) % 26;
+        }
+        assertTrue(fitness.score(english) > fitness.score(scrambled));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortCiphertext() {
+        new KeySearch(navalMachine(), "A");
+    }
+}
@@ -0,0 +1,261 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+
+import static enigma.EnigmaException.*;
+
+/** The keys, without plugboard, of machines of a given configuration:
+ *  every choice of rotors that the configuration allows (a reflector,
+ *  then non-moving rotors, then numPawls() moving rotors, none repeated)
+ *  at every setting of every slot.  The keys are divided into units for
+ *  the threads of a fork/join pool: unit U is rotor choice U / size with
+ *  its first non-reflector slot at setting U % size, where size is that
+ *  of the alphabet.  Searches that try every key enumerate them here,
+ *  and report what they find as Keys.
+ *  @author KaitoGarcia
+ */
+class KeySpace {
+
+    /** The keys of machines configured as CONFIG, which must allow
+     *  some choice of rotors. */
+    KeySpace(Machine config) {
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        _numSlots = config.numRotors();
+        _orders = rotorOrders(config);
+        if (_orders.isEmpty()) {
+            throw error("no choice of rotors fits the configuration");
+        }
+        _wirings = new ArrayList<>();
+        for (Rotor[] order : _orders) {
+            _wirings.add(new SlotWiring(Arrays.asList(order)));
+        }
+        long perOrder = 1;
+        for (int k = 1; k < _numSlots; k += 1) {
+            perOrder = Math.multiplyExact(perOrder, _size);
+        }
+        _perUnit = perOrder / _size;
+        _keysTotal = Math.multiplyExact(perOrder, (long) _orders.size());
+    }
+
+    /** Return every choice of rotors that CONFIG allows in its slots: a
+     *  reflector, then non-moving rotors, then numPawls() moving rotors,
+     *  none repeated. */
+    private static List<Rotor[]> rotorOrders(Machine config) {
+        List<Rotor[]> result = new ArrayList<>();
+        listOrders(config.availableRotors(), config.numPawls(),
+                   new Rotor[config.numRotors()], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT every choice of rotors from AVAILABLE for slots K
+     *  and up, given the choices in ORDER[0 .. K-1], where the last
+     *  PAWLS slots hold moving rotors. */
+    private static void listOrders(List<Rotor> available, int pawls,
+                                   Rotor[] order, int k,
+                                   List<Rotor[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (Rotor r : available) {
+            boolean fits;
+            if (k == 0) {
+                fits = r.reflecting();
+            } else if (k < order.length - pawls) {
+                fits = !r.reflecting() && !r.rotates();
+            } else {
+                fits = r.rotates();
+            }
+            for (int j = 0; fits && j < k; j += 1) {
+                fits = order[j] != r;
+            }
+            if (fits) {
+                order[k] = r;
+                listOrders(available, pawls, order, k + 1, result);
+            }
+        }
+    }
+
+    /** Return the number of keys. */
+    long keysTotal() {
+        return _keysTotal;
+    }
+
+    /** Return the number of keys in each unit. */
+    long keysPerUnit() {
+        return _perUnit;
+    }
+
+    /** Return the wiring of rotor choice ORDER. */
+    SlotWiring wiring(int order) {
+        return _wirings.get(order);
+    }
+
+    /** Return the results of SEARCH on every unit, combined in order of
+     *  unit by MERGE, using the threads of POOL. */
+    <T> T search(ForkJoinPool pool, IntFunction<T> search,
+                 BinaryOperator<T> merge) {
+        return pool.invoke(new UnitTask<>(search, merge, 0,
+                                          _orders.size() * _size));
+    }
+
+    /** A task that combines the results of a search on units LO .. HI-1. */
+    private static class UnitTask<T> extends RecursiveTask<T> {
+
+        /** A task that combines by MERGE the results of SEARCH on units
+         *  LO .. HI-1. */
+        UnitTask(IntFunction<T> search, BinaryOperator<T> merge,
+                 int lo, int hi) {
+            _search = search;
+            _merge = merge;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected T compute() {
+            if (_lo == _hi) {
+                return null;
+            } else if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                UnitTask<T> left = new UnitTask<>(_search, _merge, _lo, mid);
+                left.fork();
+                T right = new UnitTask<>(_search, _merge, mid, _hi).compute();
+                return _merge.apply(left.join(), right);
+            }
+            return _search.apply(_lo);
+        }
+
+        /** Search of a single unit. */
+        private final IntFunction<T> _search;
+
+        /** Combines the results of adjacent ranges of units. */
+        private final BinaryOperator<T> _merge;
+
+        /** Range of units handled by this task. */
+        private final int _lo, _hi;
+    }
+
+    /** Call VISITOR on each key of unit UNIT in turn, in order of
+     *  setting. */
+    void forEachKey(int unit, KeyVisitor visitor) {
+        int order = unit / _size;
+        PackedRotors cursor = new PackedRotors(_wirings.get(order));
+        int[] settings = new int[_numSlots];
+        settings[1] = unit % _size;
+        while (true) {
+            for (int k = 1; k < _numSlots; k += 1) {
+                cursor.set(k, settings[k]);
+            }
+            visitor.visit(order, settings, cursor);
+            int k = _numSlots - 1;
+            while (k > 1 && settings[k] == _size - 1) {
+                settings[k] = 0;
+                k -= 1;
+            }
+            if (k <= 1) {
+                return;
+            }
+            settings[k] += 1;
+        }
+    }
+
+    /** An action on each key of a unit. */
+    interface KeyVisitor {
+        /** Act on the key with rotor choice ORDER and SETTINGS (the
+         *  setting of each slot, the reflector's unused), where CURSOR
+         *  holds those rotors at those settings.  SETTINGS and CURSOR are
+         *  reused for the next key; CURSOR may be stepped. */
+        void visit(int order, int[] settings, PackedRotors cursor);
+    }
+
+    /** A key found by a search: a rotor choice, its settings, and a
+     *  plugboard. */
+    static class Key {
+
+        /** The key of KEYS with rotor choice ORDER, SETTINGS, and
+         *  plugboard PLUG, in which X is paired with PLUG[X] if that is
+         *  greater than X. */
+        Key(KeySpace keys, int order, int[] settings, int[] plug) {
+            Alphabet alphabet = keys._alphabet;
+            Rotor[] rotors = keys._orders.get(order);
+            _rotors = new String[rotors.length];
+            for (int k = 0; k < rotors.length; k += 1) {
+                _rotors[k] = rotors[k].name();
+            }
+            StringBuilder setting = new StringBuilder();
+            for (int k = 1; k < settings.length; k += 1) {
+                setting.append(alphabet.toChar(settings[k]));
+            }
+            _setting = setting.toString();
+            StringBuilder cycles = new StringBuilder();
+            for (int x = 0; x < plug.length; x += 1) {
+                if (plug[x] > x) {
+                    cycles.append(cycles.length() == 0 ? "(" : " (")
+                        .append(alphabet.toChar(x))
+                        .append(alphabet.toChar(plug[x])).append(")");
+                }
+            }
+            _plugboard = cycles.toString();
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return this key as a settings line of an input file. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of the rotors. */
+        private final String[] _rotors;
+
+        /** Settings of all slots but the reflector's. */
+        private final String _setting;
+
+        /** Plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** Alphabet of the machines. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of slots in the machines. */
+    private final int _numSlots;
+
+    /** Every allowed choice of rotors, reflector first. */
+    private final List<Rotor[]> _orders;
+
+    /** The wiring of each choice in _orders. */
+    private final List<SlotWiring> _wirings;
+
+    /** Keys in a unit. */
+    private final long _perUnit;
+
+    /** Keys in all. */
+    private final long _keysTotal;
+}
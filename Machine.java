@@ -1,6 +1,15 @@
 package enigma;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 import static enigma.EnigmaException.*;
@@ -12,21 +21,63 @@ class Machine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors, which must have distinct names; they are
+     *  indexed by name here, once, so that choosing rotors takes time
+     *  independent of how many there are. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = new ArrayList<>();
-        _myRotors = new ArrayList<>();
         _allRotors.addAll(allRotors);
         if (_allRotors.isEmpty()) {
             throw new EnigmaException("empty rotors");
         }
+        _rotorsByName = new HashMap<>();
+        for (Rotor r : _allRotors) {
+            if (_rotorsByName.put(r.name(), r) != null) {
+                throw error("duplicate rotor %s", r.name());
+            }
+        }
+        boolean singleByte = true;
+        for (int i = 0; i < alpha.size(); i += 1) {
+            singleByte &= alpha.toChar(i) <= BYTE_MASK;
+        }
+        _singleByte = singleByte;
+
+    }
 
+
+    /** A machine in the same state as ORIGINAL, with its own settings,
+     *  that can be advanced independently of it. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _singleByte = original._singleByte;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        _rotorsByName = original._rotorsByName;
+        _slots = original._slots == null ? null
+            : new PackedRotors(original._slots);
+        _plugboard = original._plugboard;
+        _compiled = original._compiled;
+        _sequenceBudget = original._sequenceBudget;
+        _sequenceWanted = original._sequenceWanted;
+        if (original._sequence != null) {
+            useSequence(original._sequence, original._seqOffset);
+        }
+        if (_slots != null) {
+            rebaseMetrics();
+        }
     }
 
+    /** Return a copy of me, in my current state, whose rotors advance
+     *  independently of mine.  The copy shares my configuration and
+     *  rotor wiring, which never change, and copies only my settings. */
+    Machine copy() {
+        return new Machine(this);
+    }
 
     /** Return the number of rotor slots I have. */
     int numRotors() {
@@ -44,99 +95,661 @@ class Machine {
         throw new EnigmaException("num pawls must be > 0");
     }
 
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return all the rotors available to me. */
+    List<Rotor> availableRotors() {
+        return Collections.unmodifiableList(_allRotors);
+    }
+
+    /** Return the rotor in slot K. */
+    Rotor rotor(int k) {
+        return _slots.wiring().rotor(k);
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        syncSlots();
+        return _slots.setting(k);
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  The choice of
+     *  rotors is checked here, once, so that converting need not.  The
+     *  rotors replace those in my slots; if they are the same rotors,
+     *  my slots' tables are kept and only the settings are reset.
+     *  Takes time proportional to the number of slots (and, for a new
+     *  choice, the alphabet size), not to the number of rotors
+     *  available. */
     void insertRotors(String[] rotors) {
-
-        for (String rotor : rotors) {
-            for (Rotor r : _allRotors) {
-                String rotorName = r.name();
-                if (!_allRotors.contains(rotorName)) {
-                    throw new EnigmaException("rotor doesnt exist");
-                }
-                if (rotor.equals(rotorName)) {
-                    _myRotors.add(r);
-                }
+        if (rotors.length != numRotors()) {
+            throw error("wrong number of rotors");
+        }
+        numPawls();
+        flushMetrics();
+        dropSequence();
+        Rotor[] chosen = new Rotor[rotors.length];
+        boolean same = _slots != null;
+        for (int k = 0; k < rotors.length; k += 1) {
+            chosen[k] = _rotorsByName.get(rotors[k]);
+            if (chosen[k] == null) {
+                throw new EnigmaException("rotor doesnt exist");
             }
+            same = same && _slots.wiring().rotor(k) == chosen[k];
         }
+        if (same) {
+            for (int k = 0; k < chosen.length; k += 1) {
+                _slots.set(k, 0);
+            }
+        } else {
+            _slots = new PackedRotors(new SlotWiring(Arrays.asList(chosen)));
+        }
+        _leftStale = true;
+        rebaseMetrics();
+    }
 
-
+    /** Put me in the key given by ROTORS, SETTING, and PLUGBOARD, as for
+     *  insertRotors, setRotors, and setPlugboard in turn.  Takes time
+     *  proportional to the number of slots when ROTORS are the rotors
+     *  already in my slots, however many rotors are available. */
+    void rekey(String[] rotors, String setting, Permutation plugboard) {
+        insertRotors(rotors);
+        setRotors(setting);
+        setPlugboard(plugboard);
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-
+        if (setting.length() >= _slots.numSlots()) {
+            throw error("too many rotor settings");
+        }
+        flushMetrics();
+        dropSequence();
         for (int i = 0; i < setting.length(); i++) {
             if (_alphabet.contains(setting.charAt(i))) {
-                _myRotors.get(i + 1).set(setting.charAt(i));
+                _slots.set(i + 1, _alphabet.toInt(setting.charAt(i)));
             }
         }
+        _leftStale = true;
+        rebaseMetrics();
+    }
+
+    /** Return the settings of all my slots, starting with the
+     *  reflector's. */
+    int[] settings() {
+        syncSlots();
+        int[] result = new int[_slots.numSlots()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _slots.setting(i);
+        }
+        return result;
+    }
+
+    /** Hold the rotors of TEMPLATE, which must have the same available
+     *  rotors as I, sharing its tables, with slot K at SETTINGS[K] and
+     *  with PLUGBOARD.  Takes time proportional to the number of slots. */
+    void reset(Machine template, int[] settings, Permutation plugboard) {
+        if (template._allRotors != _allRotors) {
+            throw error("machine has a different configuration");
+        }
+        flushMetrics();
+        dropSequence();
+        if (_slots == null || template._slots.wiring() != _slots.wiring()) {
+            _slots = new PackedRotors(template._slots);
+        }
+        for (int i = 0; i < settings.length; i += 1) {
+            _slots.set(i, settings[i]);
+        }
+        _plugboard = plugboard;
+        _leftStale = true;
+        rebaseMetrics();
+    }
+
+    /** Return the settings of my rotors after N more keystrokes, in the
+     *  form accepted by setRotors, without changing my state.  Takes time
+     *  as for seek. */
+    String stateAt(long n) {
+        int[] settings = settingsAfter(n);
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < settings.length; i += 1) {
+            result.append(_alphabet.toChar(settings[i]));
+        }
+        return result.toString();
+    }
+
+    /** Put my rotors in the state they would reach after converting N
+     *  more characters.  The first seek from a state walks the states of
+     *  my rotors a revolution of the last rotor at a time, as far as N
+     *  or round their cycle, whichever is nearer; the walk is remembered
+     *  for my rotors (see Odometer.advance), so that later seeks to any
+     *  state reached from a walked one take time independent of N. */
+    void seek(long n) {
+        flushMetrics();
+        if (_seqTable != null) {
+            seekSequence(n);
+        } else {
+            int[] settings = settingsAfter(n);
+            for (int i = 0; i < settings.length; i += 1) {
+                _slots.set(i, settings[i]);
+            }
+            _leftStale = true;
+        }
+        rebaseMetrics();
+    }
+
+    /** Add the keystrokes I have made since my metrics were last brought
+     *  up to date, with the moves of my slots they caused, to the
+     *  metrics being kept, if any.  Called at the end of every
+     *  conversion call and before my settings are changed in any other
+     *  way; callers that convert a character at a time may call it
+     *  whenever they want the metrics current. */
+    void flushMetrics() {
+        Metrics metrics = Metrics.current();
+        if (metrics == null || _slots == null) {
+            _keystrokes = 0;
+            _meterBase = null;
+            return;
+        }
+        if (_meterBase == null) {
+            _meterBase = settings();
+        } else if (_keystrokes > 0) {
+            long[] advances = new long[_meterBase.length];
+            long doubles = _slots.wiring().odometer()
+                .tally(_meterBase, _keystrokes, advances);
+            metrics.converted(_keystrokes, advances, doubles);
+        }
+        _keystrokes = 0;
+    }
+
+    /** Start counting keystrokes for the metrics from my current
+     *  settings, after they have been changed other than by
+     *  converting. */
+    private void rebaseMetrics() {
+        _meterBase = Metrics.current() == null ? null : settings();
+    }
+
+    /** Return the pre-period and period of the sequence of settings my
+     *  rotors pass through from their current settings, with how often
+     *  each slot steps.  Takes time proportional to the number of
+     *  revolutions of my last rotor in the pre-period and period. */
+    StatePeriod period() {
+        return period(Long.MAX_VALUE);
+    }
+
+    /** Return period(), or null if its pre-period and period together
+     *  exceed LIMIT keystrokes, in which case the search stops after
+     *  about 2 * LIMIT keystrokes' worth of revolutions. */
+    StatePeriod period(long limit) {
+        return _slots.wiring().odometer().period(settings(), limit);
+    }
+
+    /** Return the settings of all my slots after N more keystrokes. */
+    private int[] settingsAfter(long n) {
+        int[] settings = settings();
+        _slots.wiring().odometer().advance(settings, n);
+        return settings;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        dropSequence();
         _plugboard = plugboard;
     }
 
+    /** Precompute my conversion at every state my rotors pass through,
+     *  whenever the table takes no more than BYTES, so that converting
+     *  a character is a single load; 0, the default, turns this off.
+     *  The table is built on the first conversion after my rotors or
+     *  plugboard are set, in time proportional to its size, and is
+     *  shared with my copies.  If my rotors' pre-period and period are
+     *  too long for BYTES, I convert as usual.  See StateSequence. */
+    void setSequenceBudget(long bytes) {
+        dropSequence();
+        _sequenceBudget = bytes;
+        _sequenceWanted = bytes > 0;
+    }
+
+    /** Return true iff I am converting through a precomputed sequence
+     *  table. */
+    boolean usingSequence() {
+        if (_sequenceWanted) {
+            buildSequence();
+        }
+        return _seqTable != null;
+    }
+
+    /** Build the sequence table for my current state, if it fits in
+     *  my budget. */
+    private void buildSequence() {
+        _sequenceWanted = false;
+        long entries = Math.min(_sequenceBudget / StateSequence.ENTRY_BYTES,
+                                StateSequence.MAX_ENTRIES);
+        StatePeriod period = period(entries / _alphabet.size());
+        if (period != null) {
+            useSequence(new StateSequence(_slots, _plugboard, period), 0);
+        }
+    }
+
+    /** Convert through SEQUENCE, starting at offset OFFSET of its
+     *  table. */
+    private void useSequence(StateSequence sequence, int offset) {
+        _sequence = sequence;
+        _seqTable = sequence.table();
+        _seqEnd = sequence.end();
+        _seqRestart = sequence.periodOffset();
+        _seqOffset = offset;
+    }
+
+    /** Advance my position in the sequence table N keystrokes. */
+    private void seekSequence(long n) {
+        int size = _alphabet.size();
+        long rows = _seqEnd / size, pre = _seqRestart / size;
+        long period = rows - pre;
+        long t = _seqOffset / size;
+        if (n < rows - t) {
+            t += n;
+        } else {
+            t = pre + Math.floorMod(t - pre + n % period, period);
+        }
+        _seqOffset = (int) (t * size);
+    }
+
+    /** While I convert through a sequence table, _slots is left at the
+     *  table's starting state; set it to my current state. */
+    private void syncSlots() {
+        if (_seqTable != null) {
+            int[] settings = _sequence.base();
+            _slots.wiring().odometer()
+                .advance(settings, _seqOffset / _alphabet.size());
+            for (int i = 0; i < settings.length; i += 1) {
+                _slots.set(i, settings[i]);
+            }
+            _leftStale = true;
+        }
+    }
+
+    /** Stop converting through a sequence table, bringing _slots up to
+     *  date, and build a new one on the next conversion if I have a
+     *  budget. */
+    private void dropSequence() {
+        syncSlots();
+        _sequence = null;
+        _seqTable = null;
+        _sequenceWanted = _sequenceBudget > 0;
+    }
+
+    /** Use the compiled conversion path iff COMPILED.  The compiled path
+     *  folds every rotor but the rightmost, on the way in and back out,
+     *  into a single table that is rebuilt only when one of those rotors
+     *  moves; its results are identical to the uncompiled path. */
+    void setCompiled(boolean compiled) {
+        _compiled = compiled;
+        _leftStale = true;
+    }
+
+    /** Rebuild _leftTable from the current settings of all rotors but the
+     *  rightmost. */
+    private void buildLeftTable() {
+        int size = _alphabet.size();
+        if (_leftTable == null || _leftTable.length != size) {
+            _leftTable = new int[size];
+        }
+        int fast = _slots.numSlots() - 1;
+        for (int c = 0; c < size; c += 1) {
+            int result = c;
+            for (int i = fast - 1; i > -1; i--) {
+                result = _slots.convertForward(i, result);
+            }
+            for (int i = 1; i < fast; i++) {
+                result = _slots.convertBackward(i, result);
+            }
+            _leftTable[c] = result;
+        }
+        _leftStale = false;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-
-        for (int i = 0; i < numRotors(); i++) {
-            if (i == numRotors() - 1 || _myRotors.get(i + 1).atNotch()) {
-                for (int j = i; j < numRotors() - 1; j++) {
-                    _myRotors.get(j).advance();
-                }
-                break;
+        char[] table = _seqTable;
+        if (table != null) {
+            int offset = _seqOffset;
+            int next = offset + _alphabet.size();
+            _seqOffset = next == _seqEnd ? _seqRestart : next;
+            _keystrokes += 1;
+            return table[offset + c];
+        } else if (_sequenceWanted) {
+            buildSequence();
+            if (_seqTable != null) {
+                return convert(c);
             }
         }
-        _myRotors.get(numRotors() - 1).advance();
-
-
-        int result = _plugboard.permute(c);
-        for (int i = _numRotors - 1; i > -1; i--) {
-            result = _myRotors.get(i).convertForward(result);
+        _keystrokes += 1;
+        PackedRotors slots = _slots;
+        if (slots.step()) {
+            _leftStale = true;
         }
-        for (int i = 1; i < numRotors(); i++) {
-            result = _myRotors.get(i).convertBackward(result);
+        if (_compiled) {
+            if (_leftStale) {
+                buildLeftTable();
+            }
+            int fast = slots.numSlots() - 1;
+            int result = slots.convertForward(fast, _plugboard.permute(c));
+            result = slots.convertBackward(fast, _leftTable[result]);
+            return _plugboard.invert(result);
         }
-        result = _plugboard.invert(result);
-        return result;
+        return _plugboard.invert(slots.convert(_plugboard.permute(c)));
     }
 
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        StringBuilder result = new StringBuilder();
-        char msgChar;
-        for (int i = 0; i < msg.length(); i++) {
-            msgChar = _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
-            result.append(msgChar);
+        Metrics metrics = Metrics.current();
+        long start = metrics == null ? 0 : System.nanoTime();
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length, chars);
+        String result = new String(chars);
+        if (metrics != null) {
+            metrics.timed(chars.length, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /** Convert the LEN characters SRC[OFF .. OFF+LEN-1], storing the
+     *  results in the same positions of DST, which may be SRC.  Updates
+     *  the state of the rotors as for convert(String). */
+    void convert(char[] src, int off, int len, char[] dst) {
+        convert(src, off, len, dst, off);
+        flushMetrics();
+    }
+
+    /** Convert the LEN characters encoded as the bytes SRC[OFF ..
+     *  OFF+LEN-1], storing the results in the same positions of DST,
+     *  which may be SRC.  Each byte stands for the character with the
+     *  same unsigned value (as in ISO-8859-1), so every character of my
+     *  alphabet must be below 256. */
+    void convert(byte[] src, int off, int len, byte[] dst) {
+        convert(src, off, len, dst, off);
+        flushMetrics();
+    }
+
+    /** Convert the characters remaining in SRC, or as many of them as
+     *  fit in DST, putting the results in DST.  The positions of both
+     *  buffers advance past the characters converted.  DST may share
+     *  its contents with SRC only if it starts at the same character. */
+    void convert(CharBuffer src, CharBuffer dst) {
+        int len = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), len,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + len);
+            dst.position(dst.position() + len);
+            flushMetrics();
+            return;
+        }
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            dst.put(alpha.toChar(convert(alpha.toInt(src.get()))));
+        }
+        flushMetrics();
+    }
+
+    /** Convert the bytes remaining in SRC, or as many of them as fit in
+     *  DST, putting the results in DST, with bytes standing for
+     *  characters as for convert(byte[], int, int, byte[]).  The
+     *  positions of both buffers advance past the bytes converted.  DST
+     *  may share its contents with SRC only if it starts at the same
+     *  byte. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        int len = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), len,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + len);
+            dst.position(dst.position() + len);
+            flushMetrics();
+            return;
+        }
+        checkSingleByte();
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            char c = (char) (src.get() & BYTE_MASK);
+            dst.put((byte) alpha.toChar(convert(alpha.toInt(c))));
+        }
+        flushMetrics();
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF, storing the
+     *  results in DST starting at DSTOFF. */
+    private void convert(char[] src, int srcOff, int len,
+                         char[] dst, int dstOff) {
+        checkRange(srcOff, len, src.length);
+        checkRange(dstOff, len, dst.length);
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            dst[dstOff + i] =
+                alpha.toChar(convert(alpha.toInt(src[srcOff + i])));
+        }
+    }
+
+    /** Convert the LEN bytes of SRC starting at SRCOFF, storing the
+     *  results in DST starting at DSTOFF. */
+    private void convert(byte[] src, int srcOff, int len,
+                         byte[] dst, int dstOff) {
+        checkRange(srcOff, len, src.length);
+        checkRange(dstOff, len, dst.length);
+        checkSingleByte();
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            char c = (char) (src[srcOff + i] & BYTE_MASK);
+            dst[dstOff + i] = (byte) alpha.toChar(convert(alpha.toInt(c)));
+        }
+    }
+
+    /** Check that OFF .. OFF+LEN-1 are valid indices into an array of
+     *  length LENGTH. */
+    private static void checkRange(int off, int len, int length) {
+        if (off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException(
+                String.format("range [%d, %d) out of bounds for length %d",
+                              off, off + len, length));
         }
-        return result.toString();
     }
 
+    /** Check that every character of my alphabet is a single byte. */
+    private void checkSingleByte() {
+        if (!_singleByte) {
+            throw error("alphabet has characters that are not bytes");
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, as for convert(String), using
+     *  the threads of POOL.  MSG is divided into chunks, which one task
+     *  hands out in order, each to a subtask with a copy of me sought to
+     *  the chunk's offset.  The seeks all start from my settings, so the
+     *  first walks a single trail of my rotors' states along the message
+     *  and the rest start from its checkpoints (see Odometer.advance); as
+     *  each subtask is started as soon as its copy is ready, the walk,
+     *  a revolution of the last rotor per alphabet-size keystrokes,
+     *  overlaps the conversion. */
+    String convertParallel(CharSequence msg, ForkJoinPool pool) {
+        int len = msg.length();
+        int chunk = Math.max(MIN_CHUNK,
+                             len / (PARALLEL_SLACK * pool.getParallelism()));
+        if (len <= chunk) {
+            return convert(msg.toString());
+        }
+        char[] result = new char[len];
+        usingSequence();
+        pool.invoke(new ConvertTask(copy(), msg, result, chunk));
+        _keystrokes += len;
+        flushMetrics();
+        seek(len);
+        return new String(result);
+    }
+
+    /** A task that converts a message for convertParallel. */
+    private static class ConvertTask extends RecursiveAction {
+
+        /** A task that stores in RESULT the conversion of MSG by a copy of
+         *  START, handing out chunks of no more than CHUNK characters. */
+        ConvertTask(Machine start, CharSequence msg, char[] result,
+                    int chunk) {
+            _start = start;
+            _msg = msg;
+            _result = result;
+            _chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            int len = _msg.length();
+            List<ChunkTask> chunks = new ArrayList<>();
+            for (int lo = 0; lo < len; lo += Math.min(_chunk, len - lo)) {
+                Machine m = _start.copy();
+                m.seek(lo);
+                ChunkTask task = new ChunkTask(m, _msg, _result, lo,
+                                               lo + Math.min(_chunk,
+                                                             len - lo));
+                task.fork();
+                chunks.add(task);
+            }
+            for (ChunkTask task : chunks) {
+                task.join();
+            }
+        }
+
+        /** The machine in its state at the start of the message. */
+        private final Machine _start;
+
+        /** The whole message. */
+        private final CharSequence _msg;
+
+        /** The converted message. */
+        private final char[] _result;
+
+        /** Largest number of characters in a chunk. */
+        private final int _chunk;
+    }
+
+    /** A task that converts one chunk of a message for convertParallel. */
+    private static class ChunkTask extends RecursiveAction {
+
+        /** A task that stores in RESULT[LO .. HI-1] the conversion of
+         *  MSG[LO .. HI-1] by MACHINE, which is in its state for LO. */
+        ChunkTask(Machine machine, CharSequence msg, char[] result,
+                  int lo, int hi) {
+            _machine = machine;
+            _msg = msg;
+            _result = result;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            Alphabet alpha = _machine._alphabet;
+            for (int i = _lo; i < _hi; i += 1) {
+                int c = alpha.toInt(_msg.charAt(i));
+                _result[i] = alpha.toChar(_machine.convert(c));
+            }
+        }
+
+        /** The machine converting the chunk. */
+        private final Machine _machine;
+
+        /** The whole message. */
+        private final CharSequence _msg;
+
+        /** The converted message. */
+        private final char[] _result;
+
+        /** Range of characters of _msg in the chunk. */
+        private final int _lo, _hi;
+    }
+
+    /** Mask selecting the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Smallest number of characters convertParallel hands to a thread. */
+    static final int MIN_CHUNK = 1 << 14;
+
+    /** Number of chunks per pool thread in convertParallel, so that
+     *  threads that finish early can take up the slack. */
+    private static final int PARALLEL_SLACK = 4;
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
+    /** True iff every character of _alphabet is below 256. */
+    private final boolean _singleByte;
+
     /** num of rotors in machine. */
-    private int _numRotors;
+    private final int _numRotors;
 
     /** num of pawls in machine. */
-    private int _pawls;
+    private final int _pawls;
 
     /** plugboard. */
     private Permutation _plugboard;
 
     /** array of all possible rotors. */
-    private ArrayList<Rotor> _allRotors;
+    private final ArrayList<Rotor> _allRotors;
+
+    /** The rotors of _allRotors, by name. */
+    private final Map<String, Rotor> _rotorsByName;
+
+    /** Settings of the rotors in my slots, over their shared wiring, or
+     *  null if no rotors have been inserted. */
+    private PackedRotors _slots;
+
+    /** True iff convert uses the compiled path. */
+    private boolean _compiled;
+
+    /** Composite conversion through all rotors but the rightmost, on the
+     *  way to the reflector and back, at their current settings. */
+    private int[] _leftTable;
+
+    /** True iff _leftTable may not match the current rotor settings. */
+    private boolean _leftStale = true;
+
+    /** Keystrokes made since my metrics were last brought up to date. */
+    private long _keystrokes;
+
+    /** Settings of my slots when my metrics were last brought up to
+     *  date, or null if no metrics are being kept. */
+    private int[] _meterBase;
+
+    /** Largest sequence table I may build, in bytes, or 0 for none. */
+    private long _sequenceBudget;
+
+    /** True iff I should try to build a sequence table before my next
+     *  conversion. */
+    private boolean _sequenceWanted;
+
+    /** The sequence table I convert through, or null if none. */
+    private StateSequence _sequence;
+
+    /** The table of _sequence, or null if none. */
+    private char[] _seqTable;
+
+    /** Offset in _seqTable of the row for my current state. */
+    private int _seqOffset;
 
-    /** array of my rotors. */
-    private ArrayList<Rotor> _myRotors;
+    /** Offset just past the last row of _seqTable, and the offset of
+     *  the row that follows the last. */
+    private int _seqEnd, _seqRestart;
 }
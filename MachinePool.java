@@ -0,0 +1,146 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A source of machines for many independent sessions that share one
+ *  configuration.  The configuration is read once, into the machine
+ *  given to the pool; the pool then keeps, for each choice of rotors and
+ *  each plugboard it is asked for, the immutable tables built for it.  A
+ *  machine handed out by the pool shares those tables and holds only its
+ *  own settings, so making one, or resetting one to a Key, takes time
+ *  proportional to the number of slots.  A pool may be used by many
+ *  threads at once; each machine it hands out belongs to one thread.
+ *  @author KaitoGarcia
+ */
+class MachinePool {
+
+    /** A pool of machines with the alphabet, slots, pawls, and available
+     *  rotors of CONFIG, as read from a configuration file. */
+    MachinePool(Machine config) {
+        _config = config;
+        _alphabet = config.alphabet();
+    }
+
+    /** Return my machines' alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a new machine with no rotors in its slots, to be set up
+     *  by insertRotors. */
+    Machine machine() {
+        return _config.copy();
+    }
+
+    /** Return a new machine holding the rotors named ROTORS (ROTORS[0]
+     *  names the reflector), all at setting 0, with no plugboard
+     *  wiring. */
+    Machine machine(String[] rotors) {
+        Machine result = template(rotors).copy();
+        result.setPlugboard(plugboard(""));
+        return result;
+    }
+
+    /** Return a new machine in the state given by KEY. */
+    Machine machine(Key key) {
+        Machine result = key._template.copy();
+        key.reset(result);
+        return result;
+    }
+
+    /** Set MACHINE, which must come from this pool, to hold the rotors
+     *  named ROTORS, all at setting 0, as for Machine.insertRotors, but
+     *  without rebuilding their tables.  Its plugboard is unchanged. */
+    void insertRotors(Machine machine, String[] rotors) {
+        Machine template = template(rotors);
+        machine.reset(template, new int[rotors.length], machine.plugboard());
+    }
+
+    /** Return the key that puts a machine's slots at the rotors named
+     *  ROTORS, set to SETTING as for Machine.setRotors, with the
+     *  plugboard described by CYCLES. */
+    Key key(String[] rotors, String setting, String cycles) {
+        Machine m = machine(rotors);
+        m.setRotors(setting);
+        return new Key(template(rotors), m.settings(), plugboard(cycles));
+    }
+
+    /** Return the plugboard described by CYCLES, shared with every other
+     *  request for the same cycles. */
+    Permutation plugboard(String cycles) {
+        Permutation result = _plugboards.get(cycles);
+        if (result == null) {
+            result = new Permutation(cycles, _alphabet);
+            if (_plugboards.size() < MAX_CACHED) {
+                _plugboards.putIfAbsent(cycles, result);
+            }
+        }
+        return result;
+    }
+
+    /** Return a machine holding the rotors ROTORS at setting 0, whose
+     *  tables machines from this pool may share.  It is never itself
+     *  converted with. */
+    private Machine template(String[] rotors) {
+        List<String> names = Arrays.asList(rotors.clone());
+        Machine result = _templates.get(names);
+        if (result == null) {
+            result = _config.copy();
+            result.insertRotors(rotors);
+            if (_templates.size() < MAX_CACHED) {
+                Machine old = _templates.putIfAbsent(names, result);
+                result = old == null ? result : old;
+            }
+        }
+        return result;
+    }
+
+    /** A complete starting state: a choice of rotors, the setting of each
+     *  slot, and a plugboard.  Keys are immutable and may be shared. */
+    static final class Key {
+
+        /** The key for machines with the rotors of TEMPLATE, with slot K
+         *  at SETTINGS[K], and with PLUGBOARD. */
+        private Key(Machine template, int[] settings,
+                    Permutation plugboard) {
+            _template = template;
+            _settings = settings;
+            _plugboard = plugboard;
+        }
+
+        /** Put MACHINE, which must come from the same pool as I do, in my
+         *  state.  Takes time proportional to the number of slots. */
+        void reset(Machine machine) {
+            machine.reset(_template, _settings, _plugboard);
+        }
+
+        /** A machine holding my rotors. */
+        private final Machine _template;
+
+        /** The setting of each slot, starting with the reflector. */
+        private final int[] _settings;
+
+        /** My plugboard. */
+        private final Permutation _plugboard;
+    }
+
+    /** Most rotor choices, and most plugboards, that a pool keeps. */
+    static final int MAX_CACHED = 1 << 12;
+
+    /** The machine read from the configuration. */
+    private final Machine _config;
+
+    /** The alphabet of _config. */
+    private final Alphabet _alphabet;
+
+    /** Template machines by the names of their rotors. */
+    private final Map<List<String>, Machine> _templates =
+        new ConcurrentHashMap<>();
+
+    /** Plugboards by their cycles. */
+    private final Map<String, Permutation> _plugboards =
+        new ConcurrentHashMap<>();
+}
@@ -5,8 +5,19 @@ import org.junit.Rule;
 import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static enigma.TestUtils.*;
 
@@ -158,4 +169,480 @@ public class MachineTest {
         assertEquals(z, machine.convert(y));
     }
 
+    /** Return a machine with numRotors() == NAMES.length holding the
+     *  rotors NAMES at SETTING, with a plugboard given by CYCLES, and
+     *  using the compiled path iff COMPILED.  Each call uses fresh rotors. */
+    private Machine buildMachine(String[] names, String setting,
+                                 String cycles, boolean compiled) {
+        setRotors(NAVALA);
+        int pawls = 0;
+        for (Rotor r : allRotors) {
+            for (String name : names) {
+                if (r.rotates() && r.name().equals(name)) {
+                    pawls += 1;
+                }
+            }
+        }
+        Machine result = new Machine(new Alphabet(alpha), names.length,
+                                     pawls, allRotors);
+        result.insertRotors(names);
+        result.setRotors(setting);
+        result.setPlugboard(new Permutation(cycles, new Alphabet(alpha)));
+        result.setCompiled(compiled);
+        return result;
+    }
+
+    /** Return a random string of LEN letters drawn from alpha by RAND. */
+    private String randomText(Random rand, int len) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            result.append(alpha.charAt(rand.nextInt(alpha.length())));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testCompiledMatches() {
+        Random rand = new Random(61);
+        List<String> moving = new ArrayList<>(List.of("I", "II", "III", "IV",
+                "V", "VI", "VII", "VIII"));
+        for (int trial = 0; trial < 40; trial += 1) {
+            Collections.shuffle(moving, rand);
+            List<String> names = new ArrayList<>();
+            names.add(rand.nextBoolean() ? "B" : "C");
+            if (rand.nextBoolean()) {
+                names.add(rand.nextBoolean() ? "Beta" : "Gamma");
+            }
+            names.addAll(moving.subList(0, 1 + rand.nextInt(5)));
+            String[] slots = names.toArray(new String[0]);
+            String setting = randomText(rand, slots.length - 1);
+            String letters = randomText(rand, 26);
+            StringBuilder cycles = new StringBuilder();
+            for (int i = 0; i + 1 < letters.length(); i += 2) {
+                if (letters.indexOf(letters.charAt(i)) == i
+                    && letters.indexOf(letters.charAt(i + 1)) == i + 1) {
+                    cycles.append("(").append(letters, i, i + 2).append(")");
+                }
+            }
+            String msg = randomText(rand, 2000);
+
+            Machine plain = buildMachine(slots, setting, cycles.toString(),
+                                         false);
+            Machine compiled = buildMachine(slots, setting,
+                                            cycles.toString(), true);
+            assertEquals(msg(String.join(" ", slots), "at %s", setting),
+                         plain.convert(msg), compiled.convert(msg));
+        }
+    }
+
+    @Test
+    public void testSeek() {
+        String[] slots = {"B", "Beta", "VI", "II", "VIII"};
+        Machine stepped = buildMachine(slots, "AQDY", "", false);
+        Machine seeking = buildMachine(slots, "AQDY", "", false);
+        for (int n = 0; n < 2000; n += 1) {
+            assertEquals(msg("seek", "after %d", n),
+                         stepped.stateAt(0), seeking.stateAt(n));
+            stepped.convert(0);
+        }
+        seeking.seek(2000);
+        assertEquals(stepped.stateAt(0), seeking.stateAt(0));
+        assertEquals(stepped.convert("HELLOWORLD"),
+                     seeking.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void testSeekFar() {
+        String[] slots = {"C", "Gamma", "IV", "VII", "I", "V"};
+        Machine machine = buildMachine(slots, "ZDEPU", "", false);
+        long far = 123456789012345L;
+        String start = machine.stateAt(0);
+        String direct = machine.stateAt(far + 1000);
+        machine.seek(far);
+        assertEquals(direct, machine.stateAt(1000));
+        machine.setRotors(start);
+        assertEquals(direct, machine.stateAt(far + 1000));
+    }
+
+    @Test
+    public void testSeekRemembered() {
+        String[] slots = {"C", "Gamma", "IV", "VII", "I", "V"};
+        Machine machine = buildMachine(slots, "ZDEPU", "", false);
+        StatePeriod period = machine.period();
+        long far = 987654321987L;
+        String start = machine.stateAt(0);
+        String direct = machine.stateAt(far);
+        for (long n : new long[] {3000, 100000, period.prePeriod(), far - 5}) {
+            machine.setRotors(start);
+            machine.seek(n);
+            assertEquals(msg("remembered", "after %d", n),
+                         direct, machine.stateAt(far - n));
+            assertEquals(msg("remembered", "copy after %d", n),
+                         direct, machine.copy().stateAt(far - n));
+        }
+        machine.setRotors(start);
+        machine.seek(period.prePeriod());
+        assertEquals(machine.stateAt(0),
+                     machine.stateAt(12345 * period.period()));
+        machine.setRotors(start);
+        assertEquals(period.toString(), machine.period().toString());
+    }
+
+    @Test
+    public void testSeekCrowdedNotches() {
+        Alphabet abc = new Alphabet("ABCDE");
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD) (E)", abc)));
+        rotors.add(new MovingRotor("X", new Permutation("(ACE)", abc), "ABC"));
+        rotors.add(new MovingRotor("Y", new Permutation("(BD)", abc), "D"));
+        rotors.add(new MovingRotor("Z", new Permutation("(AEDCB)", abc),
+                                   "ABCDE"));
+        Machine stepped = new Machine(abc, 4, 3, rotors);
+        stepped.insertRotors(new String[] {"R", "X", "Y", "Z"});
+        stepped.setRotors("EAC");
+        stepped.setPlugboard(new Permutation("", abc));
+        String start = stepped.stateAt(0);
+        ArrayList<String> states = new ArrayList<>();
+        for (int n = 0; n < 500; n += 1) {
+            states.add(stepped.stateAt(0));
+            stepped.convert(0);
+        }
+        stepped.setRotors(start);
+        for (int n = 0; n < 500; n += 1) {
+            assertEquals(msg("crowded", "after %d", n),
+                         states.get(n), stepped.stateAt(n));
+        }
+    }
+
+    /** Check M.period() against stepping M one keystroke at a time.
+     *  TESTID is used in error messages. */
+    private void checkPeriod(String testId, Machine m) {
+        StatePeriod period = m.period();
+        assertNull(m.period(period.prePeriod() + period.period() - 1));
+        HashMap<List<Integer>, Integer> seen = new HashMap<>();
+        List<int[]> states = new ArrayList<>();
+        int[] state = m.settings();
+        while (!seen.containsKey(asList(state))) {
+            seen.put(asList(state), states.size());
+            states.add(state);
+            m.convert(0);
+            state = m.settings();
+        }
+        int prePeriod = seen.get(asList(state));
+        assertEquals(msg(testId, "pre-period"),
+                     prePeriod, period.prePeriod());
+        assertEquals(msg(testId, "period"),
+                     states.size() - prePeriod, period.period());
+        long[] advances = new long[state.length];
+        for (int i = prePeriod; i < states.size(); i += 1) {
+            int[] next = i + 1 < states.size() ? states.get(i + 1) : state;
+            for (int k = 0; k < advances.length; k += 1) {
+                if (next[k] != states.get(i)[k]) {
+                    advances[k] += 1;
+                }
+            }
+        }
+        for (int k = 0; k < advances.length; k += 1) {
+            assertEquals(msg(testId, "advances of slot %d", k),
+                         advances[k], period.advances(k));
+        }
+    }
+
+    /** Return the elements of ARRAY as a list. */
+    private static List<Integer> asList(int[] array) {
+        return Arrays.stream(array).boxed().toList();
+    }
+
+    @Test
+    public void testPeriod() {
+        checkPeriod("naval", buildMachine(
+                        new String[] {"B", "Beta", "III", "IV", "I"},
+                        "AXLE", "", false));
+        checkPeriod("double notches", buildMachine(
+                        new String[] {"C", "Gamma", "VI", "VII", "VIII"},
+                        "ZMAZ", "", false));
+        Random rand = new Random(18);
+        String abc = "ABCDEF";
+        for (int trial = 0; trial < 60; trial += 1) {
+            int size = 3 + rand.nextInt(4);
+            Alphabet alphabet = new Alphabet(abc.substring(0, size));
+            int numRotors = 3 + rand.nextInt(3);
+            int pawls = 1 + rand.nextInt(numRotors - 1);
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = new String[numRotors];
+            rotors.add(new Reflector("R", new Permutation("(AB)(C)",
+                                                          alphabet)));
+            names[0] = "R";
+            for (int k = 1; k < numRotors; k += 1) {
+                names[k] = "S" + k;
+                Permutation perm = new Permutation("", alphabet);
+                if (k < numRotors - pawls) {
+                    rotors.add(new FixedRotor(names[k], perm));
+                    continue;
+                }
+                StringBuilder notches = new StringBuilder();
+                for (int p = 0; p < size; p += 1) {
+                    if (rand.nextInt(3) == 0) {
+                        notches.append(abc.charAt(p));
+                    }
+                }
+                if (notches.length() == 0) {
+                    notches.append(abc.charAt(rand.nextInt(size)));
+                }
+                rotors.add(new MovingRotor(names[k], perm,
+                                           notches.toString()));
+            }
+            Machine m = new Machine(alphabet, numRotors, pawls, rotors);
+            m.insertRotors(names);
+            StringBuilder setting = new StringBuilder();
+            for (int k = 1; k < numRotors; k += 1) {
+                setting.append(abc.charAt(rand.nextInt(size)));
+            }
+            m.setRotors(setting.toString());
+            m.setPlugboard(new Permutation("", alphabet));
+            checkPeriod(msg("random", "trial %d", trial), m);
+        }
+    }
+
+    @Test
+    public void testSequence() {
+        String[] slots = {"B", "Beta", "III", "IV", "I"};
+        String cycles = "(HQ)(EX)(IP)(TR)(BY)";
+        Machine plain = buildMachine(slots, "AXLE", cycles, false);
+        Machine tabled = buildMachine(slots, "AXLE", cycles, false);
+        tabled.setSequenceBudget(1 << 21);
+        assertFalse(plain.usingSequence());
+        assertTrue(tabled.usingSequence());
+        StatePeriod period = plain.period();
+        long rows = period.prePeriod() + period.period();
+        Random rand = new Random(19);
+        String msg = randomText(rand, 40000);
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        assertArrayEquals(plain.settings(), tabled.settings());
+        assertEquals(plain.stateAt(12345), tabled.stateAt(12345));
+
+        plain.seek(1L << 40);
+        tabled.seek(1L << 40);
+        assertTrue(tabled.usingSequence());
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        Machine copy = tabled.copy();
+        assertEquals(plain.copy().convert(msg), copy.convert(msg));
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        assertEquals(plain.convertParallel(msg + msg, pool),
+                     tabled.convertParallel(msg + msg, pool));
+        assertEquals(plain.stateAt(0), tabled.stateAt(0));
+
+        Permutation plug = new Permutation("(AZ)", new Alphabet(alpha));
+        plain.setPlugboard(plug);
+        tabled.setPlugboard(plug);
+        plain.setRotors("QEVZ");
+        tabled.setRotors("QEVZ");
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        assertTrue(tabled.usingSequence());
+
+        Machine small = buildMachine(slots, "AXLE", cycles, false);
+        small.setSequenceBudget(rows * 26 * 2 - 1);
+        assertFalse(small.usingSequence());
+        assertEquals(buildMachine(slots, "AXLE", cycles, false).convert(msg),
+                     small.convert(msg));
+    }
+
+    @Test
+    public void testConvertParallel() {
+        String[] slots = {"B", "Beta", "III", "IV", "I"};
+        String msg = randomText(new Random(17), 10 * Machine.MIN_CHUNK + 7);
+        Machine sequential = buildMachine(slots, "AXLE", "(HQ) (EX) (IP)",
+                                          false);
+        Machine parallel = buildMachine(slots, "AXLE", "(HQ) (EX) (IP)",
+                                        true);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sequential.convert(msg),
+                         parallel.convertParallel(msg, pool));
+            assertEquals(sequential.stateAt(0), parallel.stateAt(0));
+            assertEquals(sequential.convert("SHORT"),
+                         parallel.convertParallel("SHORT", pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testConvertBatch() {
+        String[] slots = {"B", "Beta", "III", "IV", "I"};
+        String msg = randomText(new Random(23), 3000);
+        Machine single = buildMachine(slots, "AXLE", "(HQ) (EX)", false);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            expected.append(UPPER.toChar(single.convert(
+                UPPER.toInt(msg.charAt(i)))));
+        }
+        String want = expected.toString();
+
+        Machine m = buildMachine(slots, "AXLE", "(HQ) (EX)", false);
+        char[] chars = ("xx" + msg).toCharArray();
+        m.convert(chars, 2, 1000, chars);
+        m.convert(chars, 1002, msg.length() - 1000, chars);
+        assertEquals("char[]", want, new String(chars, 2, msg.length()));
+
+        m = buildMachine(slots, "AXLE", "(HQ) (EX)", false);
+        byte[] bytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] out = new byte[bytes.length];
+        m.convert(bytes, 0, bytes.length, out);
+        assertEquals("byte[]", want,
+                     new String(out, StandardCharsets.ISO_8859_1));
+
+        m = buildMachine(slots, "AXLE", "(HQ) (EX)", false);
+        CharBuffer src = CharBuffer.wrap(msg);
+        CharBuffer dst = CharBuffer.allocate(1000);
+        StringBuilder got = new StringBuilder();
+        while (src.hasRemaining()) {
+            m.convert(src, dst);
+            dst.flip();
+            got.append(dst);
+            dst.clear();
+        }
+        assertEquals("CharBuffer", want, got.toString());
+
+        m = buildMachine(slots, "AXLE", "(HQ) (EX)", false);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        m.convert(direct, direct.duplicate());
+        assertFalse(direct.hasRemaining());
+        direct.flip().get(out);
+        assertEquals("ByteBuffer", want,
+                     new String(out, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testConvertBatchBounds() {
+        Machine m = buildMachine(new String[] {"B", "Beta", "III", "IV", "I"},
+                                 "AXLE", "", false);
+        m.convert(new char[10], 5, 6, new char[20]);
+    }
+
+    @Test
+    public void testInsertRotorsChecks() {
+        String[][] bad = {
+            {"B", "Beta", "III", "IV"},
+            {"Beta", "B", "III", "IV", "I"},
+            {"B", "Beta", "III", "III", "I"},
+        };
+        for (String[] slots : bad) {
+            try {
+                buildMachine(slots, "AAAA", "", false);
+                fail(String.join(" ", slots) + " should be rejected");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testPool() {
+        setRotors(NAVALA);
+        MachinePool pool =
+            new MachinePool(new Machine(new Alphabet(alpha), 5, 3,
+                                        allRotors));
+        String[] slots1 = {"B", "Beta", "III", "IV", "I"};
+        String[] slots2 = {"C", "Gamma", "VI", "II", "VIII"};
+        MachinePool.Key key1 = pool.key(slots1, "AXLE", "(HQ)(EX)(IP)");
+        MachinePool.Key key2 = pool.key(slots2, "QZMA", "");
+        String msg = randomText(new Random(15), 3000);
+        String expected1 =
+            buildMachine(slots1, "AXLE", "(HQ)(EX)(IP)", false).convert(msg);
+        String expected2 =
+            buildMachine(slots2, "QZMA", "", false).convert(msg);
+
+        Machine m = pool.machine(key1);
+        assertEquals(expected1, m.convert(msg));
+        key1.reset(m);
+        assertEquals(expected1, m.convert(msg));
+        key2.reset(m);
+        assertEquals(expected2, m.convert(msg));
+        Machine other = pool.machine(key1);
+        key1.reset(m);
+        assertEquals(other.convert(msg), m.convert(msg));
+
+        Machine fresh = pool.machine();
+        pool.insertRotors(fresh, slots2);
+        fresh.setRotors("QZMA");
+        fresh.setPlugboard(pool.plugboard(""));
+        assertEquals(expected2, fresh.convert(msg));
+        assertSame(pool.plugboard("(HQ)(EX)(IP)"),
+                   pool.plugboard("(HQ)(EX)(IP)"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testPoolOtherConfig() {
+        setRotors(NAVALA);
+        MachinePool pool =
+            new MachinePool(new Machine(new Alphabet(alpha), 5, 3,
+                                        allRotors));
+        String[] slots = {"B", "Beta", "III", "IV", "I"};
+        pool.key(slots, "AXLE", "").reset(
+            buildMachine(slots, "AXLE", "", false));
+    }
+
+    @Test
+    public void testSharedWiring() throws Exception {
+        setRotors(NAVALA);
+        MachinePool pool =
+            new MachinePool(new Machine(new Alphabet(alpha), 5, 3,
+                                        allRotors));
+        String[] slots = {"B", "Beta", "VI", "II", "VIII"};
+        String msg = randomText(new Random(16), 5000);
+        String expected = buildMachine(slots, "QDZA", "(AM)(TC)", false)
+            .convert(msg);
+        MachinePool.Key key = pool.key(slots, "QDZA", "(AM)(TC)");
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i += 1) {
+                results.add(threads.submit(() -> {
+                    Machine m = pool.machine(key);
+                    StringBuilder out = new StringBuilder();
+                    for (int k = 0; k < msg.length(); k += 100) {
+                        out.append(m.convert(msg.substring(k, k + 100)));
+                    }
+                    return out.toString();
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    public void testRekey() {
+        setRotors(NAVALA);
+        Machine m = new Machine(new Alphabet(alpha), 5, 3, allRotors);
+        String[] slots = {"B", "Beta", "III", "IV", "I"};
+        String[] others = {"C", "Gamma", "VI", "II", "VIII"};
+        String msg = randomText(new Random(24), 500);
+        Permutation plugs = new Permutation("(HQ)(EX)", new Alphabet(alpha));
+        m.rekey(slots, "AXLE", plugs);
+        Rotor reflector = m.rotor(0);
+        String first = m.convert(msg);
+        m.rekey(slots, "AXLE", plugs);
+        assertSame(reflector, m.rotor(0));
+        assertEquals(first, m.convert(msg));
+        m.rekey(others, "QDZA", plugs);
+        assertEquals("C", m.rotor(0).name());
+        assertEquals(buildMachine(others, "QDZA", "(HQ)(EX)", false)
+                     .convert(msg), m.convert(msg));
+        m.rekey(slots, "AXLE", plugs);
+        assertEquals(first, m.convert(msg));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateRotorName() {
+        setRotors(NAVALA);
+        allRotors.add(new FixedRotor("Beta", new Permutation("",
+                                                             UPPER)));
+        new Machine(new Alphabet(alpha), 5, 3, allRotors);
+    }
 }
@@ -1,11 +1,18 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.NoSuchElementException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 
 import static enigma.EnigmaException.*;
@@ -23,7 +30,21 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  The arguments may be preceded by
+     *  --stream, which processes the input as it is read through
+     *  channels rather than a line at a time, or by --mmap, which
+     *  requires input and output files and maps both into memory.
+     *  With --serve ADDRESS, the only other argument is the
+     *  configuration file, and each connection to ADDRESS (a port on
+     *  the loopback interface, or the path of a Unix-domain socket)
+     *  sends input and receives output as if it were the files; see
+     *  Server.  With --compile FILE, the only other argument is the
+     *  configuration file, which is written to FILE in the binary form
+     *  of CompiledConfig; a configuration file in that form may be used
+     *  wherever a text one can.  Any of these may be preceded by
+     *  --metrics SECONDS, which keeps Metrics, registers them with JMX,
+     *  and prints them to the standard error every SECONDS seconds and
+     *  at the end. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,20 +57,90 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            switch (args[k]) {
+            case "--stream":
+                _stream = true; break;
+            case "--mmap":
+                _mapped = true; break;
+            case "--serve":
+                if (k + 1 == args.length) {
+                    throw error("--serve requires an address");
+                }
+                k += 1;
+                _serve = args[k]; break;
+            case "--compile":
+                if (k + 1 == args.length) {
+                    throw error("--compile requires an output file");
+                }
+                k += 1;
+                _compile = args[k]; break;
+            case "--metrics":
+                if (k + 1 == args.length || !args[k + 1].matches("\\d{1,9}")
+                    || Integer.parseInt(args[k + 1]) == 0) {
+                    throw error("--metrics requires a number of seconds");
+                }
+                k += 1;
+                _metricsPeriod = Integer.parseInt(args[k]) * MILLIS_PER_SEC;
+                break;
+            default:
+                throw error("unknown option %s", args[k]);
+            }
+        }
+        int count = args.length - k;
+        if (count < 1 || count > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = readFile(args[k]);
+
+        if (_compile != null) {
+            if (count != 1 || _stream || _mapped || _serve != null) {
+                throw error("--compile takes only a configuration file");
+            }
+            return;
+        }
+
+        if (_serve != null) {
+            if (count != 1 || _stream || _mapped) {
+                throw error("--serve takes only a configuration file");
+            }
+            return;
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (_mapped) {
+            if (count != 3) {
+                throw error("--mmap requires input and output files");
+            }
+            _inFile = getInputChannel(args[k + 1]);
+            _outFile = getMappedOutput(args[k + 2]);
+            return;
+        }
+
+        if (_stream) {
+            if (count > 1) {
+                _inChannel = getInputChannel(args[k + 1]);
+            } else {
+                _inChannel = Channels.newChannel(System.in);
+            }
+            if (count > 2) {
+                _outChannel = getOutputChannel(args[k + 2]);
+            } else {
+                _outChannel = Channels.newChannel(
+                    new FileOutputStream(FileDescriptor.out));
+            }
+            return;
+        }
+
+        if (count > 1) {
+            _input = getInput(args[k + 1]);
         } else {
             _input = new Scanner(System.in);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (count > 2) {
+            _output = getOutput(args[k + 2]);
         } else {
             _output = System.out;
         }
@@ -64,6 +155,26 @@ public final class Main {
         }
     }
 
+    /** Return the contents of the file named NAME, read with one
+     *  channel read where the operating system allows. */
+    private ByteBuffer readFile(String name) {
+        try (FileChannel file = FileChannel.open(Paths.get(name))) {
+            long size = file.size();
+            if (size > Integer.MAX_VALUE) {
+                throw error("%s is too large", name);
+            }
+            ByteBuffer result = ByteBuffer.allocate((int) size);
+            while (result.hasRemaining()) {
+                if (file.read(result) < 0) {
+                    throw error("could not read %s", name);
+                }
+            }
+            return result.flip();
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -73,12 +184,125 @@ public final class Main {
         }
     }
 
+    /** Return a channel reading from the file named NAME. */
+    private FileChannel getInputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME, which is created
+     *  or truncated. */
+    private WritableByteChannel getOutputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel that can map the file named NAME for writing. The
+     *  file is created or truncated. */
+    private FileChannel getMappedOutput(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Apply a machine from POOL to the messages in _inFile, writing to
+     *  _outFile, with both mapped into memory. */
+    private void processMapped(MachinePool pool) {
+        Charset charset = Charset.defaultCharset();
+        long estimate;
+        try {
+            estimate = _inFile.size() + _inFile.size() / 5 + 2;
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        GroupWriter output = new GroupWriter(_outFile, charset, _alphabet,
+                                             estimate,
+                                             MessageReader.WINDOW_SIZE);
+        try {
+            new StreamProcessor(pool,
+                                new MessageReader(_inFile, charset, _alphabet,
+                                                  MessageReader.WINDOW_SIZE),
+                                output).process();
+        } finally {
+            output.close();
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output, keeping metrics if asked to. */
     private void process() {
-        Machine machine = readConfig();
+        if (_compile != null) {
+            writeCompiled(readConfig());
+            return;
+        }
 
+        long start = System.nanoTime();
+        Machine config = readConfig();
+        long loadTime = System.nanoTime() - start;
+        Metrics metrics = null;
+        if (_metricsPeriod > 0) {
+            metrics = Metrics.enable(config.numRotors());
+            metrics.configLoaded(loadTime);
+            metrics.register();
+            metrics.startDump(System.err, _metricsPeriod);
+        }
+        try {
+            process(new MachinePool(config));
+        } finally {
+            if (metrics != null) {
+                metrics.stopDump();
+                System.err.print(metrics.getReport());
+            }
+        }
+    }
+
+    /** Apply machines from POOL to the input, as process() describes. */
+    private void process(MachinePool pool) {
+        if (_serve != null) {
+            Server server = new Server(pool, Server.listen(_serve),
+                                       Charset.defaultCharset());
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.serve();
+            return;
+        } else if (_mapped) {
+            processMapped(pool);
+            return;
+        } else if (_stream) {
+            new StreamProcessor(pool, _inChannel, _outChannel,
+                                Charset.defaultCharset()).process();
+            return;
+        }
+
+        _writer = new GroupWriter(Channels.newChannel(_output),
+                                  Charset.defaultCharset(), _alphabet);
+        try {
+            processMessages(pool);
+        } finally {
+            _writer.flush();
+            _output.flush();
+        }
+    }
+
+    /** Apply a machine from POOL to the messages in _input, writing the
+     *  results through _writer. */
+    private void processMessages(MachinePool pool) {
+        Machine machine = pool.machine();
         if (!_input.hasNext("(?<=^|\n)\\*.*")) {
             throw error("Invalid start of input file.");
         }
@@ -96,7 +320,8 @@ public final class Main {
             for (int i = 1; i < machine.numRotors(); i += 1) {
                 rotors[i] = _input.next();
             }
-            machine.insertRotors(rotors);
+            pool.insertRotors(machine, rotors);
+            Metrics.countRekey();
 
             String setting = _input.next();
             setUp(machine, setting);
@@ -115,7 +340,7 @@ public final class Main {
                 cycles += scan.next();
             }
 
-            machine.setPlugboard(new Permutation(cycles, _alphabet));
+            machine.setPlugboard(pool.plugboard(cycles));
 
             while (_input.hasNextLine() && !_input.hasNext("(?<=^|\n)\\*.*")) {
                 String nextLine = _input.nextLine().replaceAll("[ \t]", "");
@@ -129,7 +354,7 @@ public final class Main {
                     String str = _input.next();
                     str = str.replaceAll("\r", "");
                     for (int i = 0; i < str.length(); i += 1) {
-                        _output.print("\r\n");
+                        _writer.crlf();
                     }
                 }
                 _input.useDelimiter("\\s+");
@@ -140,93 +365,26 @@ public final class Main {
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
-        try {
-            if (!_config.hasNext()) {
-                throw new EnigmaException("config empty or no config");
-            }
-
-            String advanceToAlphabet = _config.next();
-            _alphabet = new Alphabet(advanceToAlphabet);
-
-
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("invalid num rotors or num pawls");
-            }
-
-            int advanceToNumRotors = _config.nextInt();
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("invalid num rotors or num pawls");
-            }
-
-            int numRotors = advanceToNumRotors;
-            int numPawls = _config.nextInt();
-
-            Collection<Rotor> rotors = new ArrayList<>();
-            while (_config.hasNext()) {
-                Rotor newRotor = readRotor();
-                if (rotors.contains(newRotor)) {
-                    throw error("Duplicate rotor");
-                } else {
-                    rotors.add(newRotor);
-                }
-            }
-
-
-            return new Machine(_alphabet, numRotors, numPawls, rotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+        Machine result;
+        if (CompiledConfig.isCompiled(_config)) {
+            result = CompiledConfig.decode(_config);
+        } else {
+            result = new ConfigParser(Charset.defaultCharset().decode(_config))
+                .parse();
         }
+        _alphabet = result.alphabet();
+        return result;
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            Rotor result;
-            String rName = _config.next();
-            if (rName.contains("(") || rName.contains(")")) {
-                throw error("Wrong rotor name format");
-            }
-            String info = _config.next();
-            String notches = info.substring(1);
-
-            StringBuilder cycles = new StringBuilder();
-            while (_config.hasNext(".*[\\(|\\)]+.*")) {
-                cycles.append(_config.next());
+    /** Write CONFIG to the file named _compile in compiled form. */
+    private void writeCompiled(Machine config) {
+        ByteBuffer data = CompiledConfig.encode(config);
+        try (WritableByteChannel out = getOutputChannel(_compile)) {
+            while (data.hasRemaining()) {
+                out.write(data);
             }
-
-            Permutation perm = new Permutation(cycles.toString(), _alphabet);
-
-            switch (info.charAt(0)) {
-            case 'M':
-                if (notches.length() < 1) {
-                    throw error("No notch");
-                }
-                for (int i = 0; i < notches.length(); i += 1) {
-                    if (!_alphabet.contains(notches.charAt(i))) {
-                        throw error("no Notch in alphabet");
-                    }
-                }
-                result = new MovingRotor(rName, perm, notches); break;
-            case 'N':
-                if (!(notches.length() == 0)) {
-                    throw error("Notch for fixed rotor detected.");
-                }
-                result = new FixedRotor(rName, perm); break;
-            case 'R':
-                if (notches.length() != 0) {
-                    throw error("Notch for reflector detected.");
-                }
-                result = new Reflector(rName, perm);
-                if (!result.permutation().derangement()) {
-                    throw error("Reflector is not a derangement.");
-                }
-                break;
-            default:
-                throw error("Wrong rotor type. Must be M, N or R.");
-            }
-            return result;
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+        } catch (IOException excp) {
+            throw error("could not write %s", _compile);
         }
     }
 
@@ -239,18 +397,10 @@ public final class Main {
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < msg.length(); i++) {
-            char c = msg.charAt(i);
-            result.append(c);
-
-            if (((i + 1) % 5 == 0) && (i != msg.length() - 1)) {
-                result.append(" ");
-            }
+        for (int i = 0; i < msg.length(); i += 1) {
+            _writer.put(msg.charAt(i));
         }
-        _output.print(result + "\n");
-
+        _writer.endLine();
     }
 
     /** Alphabet used in this machine. */
@@ -260,8 +410,42 @@ public final class Main {
     private Scanner _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private ByteBuffer _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** Buffered, grouping writer to _output. */
+    private GroupWriter _writer;
+
+    /** True iff messages are processed through channels. */
+    private boolean _stream;
+
+    /** Source of input messages when _stream. */
+    private ReadableByteChannel _inChannel;
+
+    /** Destination of encoded/decoded messages when _stream. */
+    private WritableByteChannel _outChannel;
+
+    /** Address on which to serve clients, or null if not serving. */
+    private String _serve;
+
+    /** True iff input and output files are mapped into memory. */
+    private boolean _mapped;
+
+    /** File to which to write the compiled configuration, or null. */
+    private String _compile;
+
+    /** Milliseconds between metrics reports, or 0 if metrics are not
+     *  kept. */
+    private long _metricsPeriod;
+
+    /** Milliseconds per second. */
+    private static final long MILLIS_PER_SEC = 1000;
+
+    /** Input file when _mapped. */
+    private FileChannel _inFile;
+
+    /** Output file when _mapped. */
+    private FileChannel _outFile;
 }
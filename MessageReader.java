@@ -0,0 +1,290 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** A source of characters read from a channel through reusable byte and
+ *  character buffers, with the small amount of lookahead and tokenizing
+ *  needed to parse an input file of messages.  A file may instead be
+ *  read through a sequence of memory-mapped windows, in which case
+ *  single-byte text is read directly from the mapped bytes.
+ *  @author KaitoGarcia
+ */
+class MessageReader {
+
+    /** A reader of the characters of IN, decoded using CHARSET. */
+    MessageReader(ReadableByteChannel in, Charset charset) {
+        _in = in;
+        _file = null;
+        _fileSize = 0;
+        _window = 0;
+        _byteLimit = 0;
+        _decoder = newDecoder(charset);
+        _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _chars.flip();
+    }
+
+    /** A reader of the characters of IN, decoded using CHARSET, that maps
+     *  IN WINDOW bytes (at least MAX_CHAR_BYTES) at a time.  If every
+     *  character of ALPHABET is a single byte in CHARSET, bytes are taken
+     *  as characters directly. */
+    MessageReader(FileChannel in, Charset charset, Alphabet alphabet,
+                  int window) {
+        _in = in;
+        _file = in;
+        try {
+            _fileSize = in.size();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        _window = Math.max(window, MAX_CHAR_BYTES);
+        _byteLimit = byteLimit(alphabet, charset);
+        _decoder = _byteLimit > 0 ? null : newDecoder(charset);
+        _bytes = ByteBuffer.allocate(0);
+        _chars = CharBuffer.allocate(_byteLimit > 0 ? 0 : BUFFER_SIZE);
+        _chars.flip();
+    }
+
+    /** Return a decoder for CHARSET that replaces bad input. */
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /** Return the bound B such that CHARSET encodes every character
+     *  below B, including all of ALPHABET, as the single byte with the
+     *  same value, or 0 if there is no such bound. */
+    static int byteLimit(Alphabet alphabet, Charset charset) {
+        int limit;
+        if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            limit = LATIN1_LIMIT;
+        } else if (charset.equals(StandardCharsets.US_ASCII)
+                   || charset.equals(StandardCharsets.UTF_8)) {
+            limit = ASCII_LIMIT;
+        } else {
+            return 0;
+        }
+        for (int i = 0; i < alphabet.size(); i += 1) {
+            if (alphabet.toChar(i) >= limit) {
+                return 0;
+            }
+        }
+        return limit;
+    }
+
+    /** Return the character for input byte B when reading single bytes. */
+    private int decodeByte(byte b) {
+        int c = b & BYTE_MASK;
+        return c < _byteLimit ? c : REPLACEMENT;
+    }
+
+    /** Return the next character without consuming it, or -1 at the end
+     *  of input. */
+    int peek() {
+        if (_byteLimit > 0) {
+            if (!_bytes.hasRemaining() && !mapWindow()) {
+                return -1;
+            }
+            return decodeByte(_bytes.get(_bytes.position()));
+        }
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return _chars.get(_chars.position());
+    }
+
+    /** Return and consume the next character, or return -1 at the end of
+     *  input. */
+    int read() {
+        if (_byteLimit > 0) {
+            if (!_bytes.hasRemaining() && !mapWindow()) {
+                return -1;
+            }
+            _previous = decodeByte(_bytes.get());
+            return _previous;
+        }
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        _previous = _chars.get();
+        return _previous;
+    }
+
+    /** Return true iff the next character starts a line: it is the first
+     *  character of the input or follows a newline. */
+    boolean atLineStart() {
+        return _previous == -1 || _previous == '\n';
+    }
+
+    /** Consume whitespace, returning true iff any remains to be read. */
+    boolean skipWhitespace() {
+        int c = peek();
+        while (c != -1 && Character.isWhitespace(c)) {
+            read();
+            c = peek();
+        }
+        return c != -1;
+    }
+
+    /** Return the next whitespace-delimited token, throwing
+     *  NoSuchElementException if there is none. */
+    String token() {
+        if (!skipWhitespace()) {
+            throw new NoSuchElementException();
+        }
+        _token.setLength(0);
+        int c = peek();
+        while (c != -1 && !Character.isWhitespace(c)) {
+            _token.append((char) read());
+            c = peek();
+        }
+        return _token.toString();
+    }
+
+    /** Return the rest of the current line and consume its terminator
+     *  (\n, \r\n, or \r).  Throws NoSuchElementException if the input
+     *  is exhausted. */
+    String restOfLine() {
+        if (peek() == -1) {
+            throw new NoSuchElementException("No line found");
+        }
+        _token.setLength(0);
+        for (int c = read(); c != -1; c = read()) {
+            if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                if (peek() == '\n') {
+                    read();
+                }
+                break;
+            }
+            _token.append((char) c);
+        }
+        return _token.toString();
+    }
+
+    /** Refill _chars from _in, returning false iff the input is
+     *  exhausted. */
+    private boolean fill() {
+        _chars.clear();
+        try {
+            while (_chars.position() == 0 && !_flushed) {
+                if (_file != null) {
+                    if (!_eof && _bytes.remaining() < MAX_CHAR_BYTES) {
+                        mapWindow();
+                    }
+                    _decoder.decode(_bytes, _chars, _eof);
+                } else {
+                    if (!_eof && _in.read(_bytes) < 0) {
+                        _eof = true;
+                    }
+                    _bytes.flip();
+                    _decoder.decode(_bytes, _chars, _eof);
+                    _bytes.compact();
+                }
+                if (_eof && (_file == null || !_bytes.hasRemaining())) {
+                    _decoder.flush(_chars);
+                    _flushed = true;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        _chars.flip();
+        return _chars.hasRemaining();
+    }
+
+    /** Map the next window of _file, starting with the first byte not
+     *  yet consumed.  Returns false iff no bytes remain. */
+    private boolean mapWindow() {
+        long start = _windowStart + _bytes.position();
+        long size = Math.min(_window, _fileSize - start);
+        if (size <= 0) {
+            _eof = true;
+            return false;
+        }
+        try {
+            _bytes = _file.map(FileChannel.MapMode.READ_ONLY, start, size);
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        _windowStart = start;
+        _eof = start + size == _fileSize;
+        return true;
+    }
+
+    /** Size of the byte and character buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Default size of the windows in which a file is mapped. */
+    static final int WINDOW_SIZE = 1 << 28;
+
+    /** Characters below this bound are single bytes in Latin-1. */
+    private static final int LATIN1_LIMIT = 0x100;
+
+    /** Characters below this bound are single bytes in ASCII and UTF-8. */
+    private static final int ASCII_LIMIT = 0x80;
+
+    /** Mask selecting the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The character read for a byte that is not a single-byte
+     *  character. */
+    private static final int REPLACEMENT = 0xfffd;
+
+    /** Most bytes a mapped window must retain to decode one character. */
+    static final int MAX_CHAR_BYTES = 8;
+
+    /** Source of input bytes. */
+    private final ReadableByteChannel _in;
+
+    /** Source of input bytes when mapping, else null. */
+    private final FileChannel _file;
+
+    /** Size of _file. */
+    private final long _fileSize;
+
+    /** Size of the windows in which _file is mapped. */
+    private final int _window;
+
+    /** Offset in _file of the current window. */
+    private long _windowStart;
+
+    /** If positive, input bytes below this value are read directly as
+     *  characters, and input is read only from _file. */
+    private final int _byteLimit;
+
+    /** Decoder from input bytes to characters. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes read from _in but not yet decoded, or the current window
+     *  of _file. */
+    private ByteBuffer _bytes;
+
+    /** Decoded characters not yet consumed. */
+    private final CharBuffer _chars;
+
+    /** Buffer for assembling tokens and lines. */
+    private final StringBuilder _token = new StringBuilder();
+
+    /** The last character consumed, or -1 if none has been. */
+    private int _previous = -1;
+
+    /** True once _in has reported end of input. */
+    private boolean _eof;
+
+    /** True once _decoder has been flushed at end of input. */
+    private boolean _flushed;
+}
@@ -0,0 +1,286 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counts of the work done by machines and by Main, kept only while
+ *  enabled.  A machine counts its keystrokes in a plain field of its
+ *  own, which costs no more than an increment per character, and adds
+ *  them here in a batch at the end of each conversion call or settings
+ *  change; the moves of each slot and the double steps in the batch are
+ *  then worked out by the Odometer from the settings at its start,
+ *  rather than counted keystroke by keystroke.  Counts that many
+ *  threads update are LongAdders.  Latencies of Machine.convert(String)
+ *  are kept in histograms whose buckets, like the message-size
+ *  classes, are powers of two.
+ *  @author KaitoGarcia
+ */
+class Metrics implements MetricsMBean {
+
+    /** Counts for machines of at most MAXSLOTS slots; moves of slots
+     *  beyond that are not counted. */
+    Metrics(int maxSlots) {
+        _slotSteps = new LongAdder[maxSlots];
+        for (int k = 0; k < maxSlots; k += 1) {
+            _slotSteps[k] = new LongAdder();
+        }
+        _latency = new LongAdder[SIZE_CLASSES][LATENCY_BUCKETS];
+        for (LongAdder[] row : _latency) {
+            for (int b = 0; b < row.length; b += 1) {
+                row[b] = new LongAdder();
+            }
+        }
+    }
+
+    /** Return the metrics being kept, or null if they are off. */
+    static Metrics current() {
+        return _current;
+    }
+
+    /** Start keeping metrics for machines of at most MAXSLOTS slots, in
+     *  place of any kept before, and return them. */
+    static Metrics enable(int maxSlots) {
+        Metrics result = new Metrics(maxSlots);
+        _current = result;
+        return result;
+    }
+
+    /** Stop keeping metrics. */
+    static void disable() {
+        _current = null;
+    }
+
+    /** Count a settings line, if metrics are on. */
+    static void countRekey() {
+        Metrics metrics = _current;
+        if (metrics != null) {
+            metrics._rekeys.increment();
+        }
+    }
+
+    /** Record that CHARS characters were converted, in which slot K moved
+     *  ADVANCES[K] times and there were DOUBLES double steps. */
+    void converted(long chars, long[] advances, long doubles) {
+        _chars.add(chars);
+        int n = Math.min(advances.length, _slotSteps.length);
+        for (int k = 0; k < n; k += 1) {
+            if (advances[k] != 0) {
+                _slotSteps[k].add(advances[k]);
+            }
+        }
+        _doubleSteps.add(doubles);
+    }
+
+    /** Record that converting a message of LENGTH characters took NANOS
+     *  nanoseconds. */
+    void timed(int length, long nanos) {
+        _latency[bucket(length)][bucket(Math.max(0, nanos))].increment();
+    }
+
+    /** Record that loading the configuration took NANOS nanoseconds. */
+    void configLoaded(long nanos) {
+        _configNanos.set(nanos);
+    }
+
+    /** Return the bucket of the histogram for VALUE >= 0: 0 for 0, and
+     *  otherwise B where 2^(B-1) <= VALUE < 2^B. */
+    private static int bucket(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /** Return the largest value in bucket B. */
+    private static long bucketLimit(int b) {
+        return b == Long.SIZE ? Long.MAX_VALUE : (1L << b) - 1;
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long[] getSlotSteps() {
+        long[] result = new long[_slotSteps.length];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = _slotSteps[k].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    @Override
+    public long getRekeys() {
+        return _rekeys.sum();
+    }
+
+    @Override
+    public long getConfigLoadNanos() {
+        return _configNanos.get();
+    }
+
+    @Override
+    public String[] getConvertLatency() {
+        int lines = 0;
+        String[] all = new String[SIZE_CLASSES];
+        for (int s = 0; s < SIZE_CLASSES; s += 1) {
+            long[] counts = new long[LATENCY_BUCKETS];
+            long total = 0;
+            for (int b = 0; b < LATENCY_BUCKETS; b += 1) {
+                counts[b] = _latency[s][b].sum();
+                total += counts[b];
+            }
+            if (total > 0) {
+                all[lines] = String.format(
+                    "size %d-%d: %d calls, p50 < %d ns, p90 < %d ns,"
+                    + " p99 < %d ns, max < %d ns",
+                    s == 0 ? 0 : 1L << (s - 1), bucketLimit(s), total,
+                    percentile(counts, total, 0.5),
+                    percentile(counts, total, 0.9),
+                    percentile(counts, total, 0.99),
+                    percentile(counts, total, 1.0));
+                lines += 1;
+            }
+        }
+        String[] result = new String[lines];
+        System.arraycopy(all, 0, result, 0, lines);
+        return result;
+    }
+
+    /** Return a bound on the FRACTION quantile of a histogram with
+     *  COUNTS in its buckets, TOTAL in all: one more than the largest
+     *  value in the bucket holding it. */
+    private static long percentile(long[] counts, long total,
+                                   double fraction) {
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b += 1) {
+            seen += counts[b];
+            if (seen >= rank) {
+                long limit = bucketLimit(b);
+                return limit == Long.MAX_VALUE ? limit : limit + 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder result = new StringBuilder();
+        String nl = System.lineSeparator();
+        result.append(String.format("characters converted: %d%n",
+                                    getCharactersConverted()));
+        result.append("slot steps:");
+        for (long steps : getSlotSteps()) {
+            result.append(' ').append(steps);
+        }
+        result.append(nl);
+        result.append(String.format("double steps: %d%n", getDoubleSteps()));
+        result.append(String.format("rekeys: %d%n", getRekeys()));
+        result.append(String.format("config load: %d ns%n",
+                                    getConfigLoadNanos()));
+        for (String line : getConvertLatency()) {
+            result.append("convert ").append(line).append(nl);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public void reset() {
+        _chars.reset();
+        for (LongAdder steps : _slotSteps) {
+            steps.reset();
+        }
+        _doubleSteps.reset();
+        _rekeys.reset();
+        for (LongAdder[] row : _latency) {
+            for (LongAdder count : row) {
+                count.reset();
+            }
+        }
+    }
+
+    /** Make me visible through JMX, under the name OBJECT_NAME, replacing
+     *  any metrics registered before. */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Print my report to OUT every PERIOD milliseconds, on a daemon
+     *  thread, until stopDump is called. */
+    void startDump(PrintStream out, long period) {
+        stopDump();
+        _dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread result = new Thread(task, "enigma-metrics");
+            result.setDaemon(true);
+            return result;
+        });
+        _dumper.scheduleAtFixedRate(() -> out.print(getReport()),
+                                    period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stop any periodic report started by startDump. */
+    void stopDump() {
+        if (_dumper != null) {
+            _dumper.shutdownNow();
+            _dumper = null;
+        }
+    }
+
+    /** Name under which metrics are registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Number of message-size classes: a class for each bucket of an
+     *  int. */
+    private static final int SIZE_CLASSES = Integer.SIZE + 1;
+
+    /** Number of latency buckets: a bucket for each bit of a long. */
+    private static final int LATENCY_BUCKETS = Long.SIZE + 1;
+
+    /** The metrics being kept, or null. */
+    private static volatile Metrics _current;
+
+    /** Characters converted. */
+    private final LongAdder _chars = new LongAdder();
+
+    /** Moves of each slot. */
+    private final LongAdder[] _slotSteps;
+
+    /** Double steps. */
+    private final LongAdder _doubleSteps = new LongAdder();
+
+    /** Settings lines applied. */
+    private final LongAdder _rekeys = new LongAdder();
+
+    /** Nanoseconds taken to load the configuration. */
+    private final AtomicLong _configNanos = new AtomicLong();
+
+    /** _latency[S][B] counts convert(String) calls on messages in size
+     *  class S that took a time in bucket B. */
+    private final LongAdder[][] _latency;
+
+    /** Thread printing periodic reports, or null. */
+    private ScheduledExecutorService _dumper;
+}
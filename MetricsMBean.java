@@ -0,0 +1,34 @@
+package enigma;
+
+/** The management interface of Metrics, as seen through JMX.
+ *  @author KaitoGarcia
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of times each slot has advanced, starting with
+     *  the reflector's. */
+    long[] getSlotSteps();
+
+    /** Return the number of double steps. */
+    long getDoubleSteps();
+
+    /** Return the number of settings lines applied. */
+    long getRekeys();
+
+    /** Return the time taken to load the configuration, in
+     *  nanoseconds. */
+    long getConfigLoadNanos();
+
+    /** Return one line for each message-size class that has been seen,
+     *  summarizing the latency of converting messages of that size. */
+    String[] getConvertLatency();
+
+    /** Return all of the above as text. */
+    String getReport();
+
+    /** Set every count to 0. */
+    void reset();
+}
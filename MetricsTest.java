@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author KaitoGarcia
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return navalMachine() holding the reflector B and the rotors I,
+     *  II, and III, with no plugboard. */
+    private Machine machine() {
+        Machine result = navalMachine();
+        result.insertRotors(new String[] { "B", "I", "II", "III" });
+        result.setPlugboard(new Permutation("", UPPER));
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDoubleStep() {
+        Metrics metrics = Metrics.enable(4);
+        try {
+            Machine m = machine();
+            m.setRotors("ADU");
+            m.convert("AAA");
+            assertEquals("BFX", m.stateAt(0));
+            assertEquals(3, metrics.getCharactersConverted());
+            assertArrayEquals(new long[] { 0, 1, 2, 3 },
+                              metrics.getSlotSteps());
+            assertEquals(1, metrics.getDoubleSteps());
+        } finally {
+            Metrics.disable();
+        }
+    }
+
+    @Test
+    public void testCounts() {
+        Metrics metrics = Metrics.enable(4);
+        try {
+            Machine m = machine();
+            m.setRotors("AAA");
+            Odometer odometer = new Odometer(Arrays.asList(
+                m.rotor(0), m.rotor(1), m.rotor(2), m.rotor(3)));
+            int[] settings = m.settings();
+            long[] steps = new long[4];
+            long doubles = 0;
+            for (int i = 0; i < 20001; i += 1) {
+                if (m.rotor(1).atNotch(settings[1])
+                    || m.rotor(2).atNotch(settings[2])) {
+                    doubles += 1;
+                }
+                int[] next = settings.clone();
+                odometer.step(next);
+                for (int k = 0; k < 4; k += 1) {
+                    steps[k] += next[k] != settings[k] ? 1 : 0;
+                }
+                settings = next;
+            }
+
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < 20000; i += 1) {
+                msg.append((char) ('A' + i % 26));
+            }
+            for (int i = 0; i < msg.length(); i += 1000) {
+                m.convert(msg.substring(i, i + 1000));
+            }
+            m.convert(new char[] { 'A' }, 0, 1, new char[1]);
+            assertEquals(20001, metrics.getCharactersConverted());
+            assertArrayEquals(steps, metrics.getSlotSteps());
+            assertEquals(doubles, metrics.getDoubleSteps());
+
+            m.setRotors("ZZZ");
+            m.convert(UPPER.toInt('A'));
+            m.flushMetrics();
+            assertEquals(20002, metrics.getCharactersConverted());
+            String[] latency = metrics.getConvertLatency();
+            assertEquals(1, latency.length);
+            assertTrue(latency[0],
+                       latency[0].startsWith("size 512-1023: 20 calls"));
+
+            metrics.reset();
+            assertEquals(0, metrics.getCharactersConverted());
+            assertEquals(0, metrics.getConvertLatency().length);
+        } finally {
+            Metrics.disable();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        Metrics metrics = Metrics.enable(4);
+        Metrics.disable();
+        Machine m = machine();
+        m.setRotors("AAA");
+        m.convert("HELLOWORLD");
+        Metrics.countRekey();
+        assertEquals(0, metrics.getCharactersConverted());
+        assertEquals(0, metrics.getRekeys());
+    }
+
+    @Test
+    public void testReportAndJmx() throws Exception {
+        Metrics metrics = Metrics.enable(4);
+        try {
+            metrics.configLoaded(1234);
+            Metrics.countRekey();
+            metrics.register();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+            assertEquals(1L, server.getAttribute(name, "Rekeys"));
+            assertEquals(1234L, server.getAttribute(name, "ConfigLoadNanos"));
+            String report = metrics.getReport();
+            assertTrue(report, report.contains("rekeys: 1"));
+            assertTrue(report, report.contains("config load: 1234 ns"));
+            server.unregisterMBean(name);
+        } finally {
+            Metrics.disable();
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package enigma;
 
+import java.util.BitSet;
+
 import static enigma.EnigmaException.*;
 
-/** Class that represents a rotating rotor in the enigma machine.
+/** Class that represents a rotating rotor in the enigma machine.  Its
+ *  notch positions are kept as a set of bits, so that testing for a
+ *  notch is a single probe.
  *  @author KaitoGarcia
  */
 class MovingRotor extends Rotor {
@@ -15,22 +19,25 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notchSet = new BitSet(size());
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notchSet.set(alphabet().toInt(notches.charAt(i)));
+        }
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == this.setting()) {
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int posn) {
+        return _notchSet.get(posn);
     }
 
     @Override
-    void advance() {
-        set(permutation().wrap(setting() + 1));
+    int notchDistance(int posn) {
+        int next = _notchSet.nextSetBit(posn);
+        if (next >= 0) {
+            return next - posn;
+        }
+        next = _notchSet.nextSetBit(0);
+        return next < 0 ? -1 : next + size() - posn;
     }
 
     @Override
@@ -38,7 +45,7 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-    /** string variable for notches. */
-    private String _notches;
+    /** The settings at which I am at a notch. */
+    private final BitSet _notchSet;
 
 }
@@ -6,6 +6,7 @@ import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.List;
 
 import static enigma.TestUtils.*;
 
@@ -24,10 +25,10 @@ public class MovingRotorTest {
     private String alpha = UPPER_STRING;
 
     /** Check that rotor has an alphabet whose size is that of
-     *  FROMALPHA and TOALPHA and that maps each character of
+     *  FROMALPHA and TOALPHA and that, at SETTING, maps each character of
      *  FROMALPHA to the corresponding character of FROMALPHA, and
      *  vice-versa. TESTID is used in error messages. */
-    private void checkRotor(String testId,
+    private void checkRotor(String testId, int setting,
                             String fromAlpha, String toAlpha) {
         int N = fromAlpha.length();
         assertEquals(testId + " (wrong length)", N, rotor.size());
@@ -35,9 +36,9 @@ public class MovingRotorTest {
             char c = fromAlpha.charAt(i), e = toAlpha.charAt(i);
             int ci = alpha.indexOf(c), ei = alpha.indexOf(e);
             assertEquals(msg(testId, "wrong translation of %d (%c)", ci, c),
-                         ei, rotor.convertForward(ci));
+                         ei, rotor.convertForward(ci, setting));
             assertEquals(msg(testId, "wrong inverse of %d (%c)", ei, e),
-                         ci, rotor.convertBackward(ei));
+                         ci, rotor.convertBackward(ei, setting));
         }
     }
 
@@ -54,21 +55,80 @@ public class MovingRotorTest {
     @Test
     public void checkRotorAtA() {
         setRotor("I", NAVALA, "");
-        checkRotor("Rotor I (A)", UPPER_STRING, NAVALA_MAP.get("I"));
+        checkRotor("Rotor I (A)", 0, UPPER_STRING, NAVALA_MAP.get("I"));
     }
 
     @Test
     public void checkRotorAdvance() {
         setRotor("I", NAVALA, "");
-        rotor.advance();
-        checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
+        checkRotor("Rotor I advanced", 1, UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
-        rotor.set(25);
-        checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
+        checkRotor("Rotor I set", 25, UPPER_STRING, NAVALZ_MAP.get("I"));
+    }
+
+    @Test
+    public void checkLargeRotor() {
+        int n = Rotor.MAX_TABLE_SIZE + 72;
+        StringBuilder chars = new StringBuilder();
+        int[] triple = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            chars.append((char) (0x100 + i));
+            triple[i] = 3 * i % n;
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        rotor = new MovingRotor("big", new Permutation(triple, big), "");
+        for (int s = 0; s < n; s += 17) {
+            for (int p = 0; p < n; p += 1) {
+                int e = (3 * (p + s) - s) % n;
+                assertEquals(e, rotor.convertForward(p, s));
+                assertEquals(p, rotor.convertBackward(e, s));
+            }
+        }
+    }
+
+    @Test
+    public void checkRotorWraps() {
+        setRotor("I", NAVALA, "");
+        Rotor reflector =
+            new Reflector("B", new Permutation(NAVALA.get("B"), UPPER));
+        SlotWiring wiring = new SlotWiring(List.of(reflector, rotor));
+        PackedRotors slots = new PackedRotors(wiring);
+        PackedRotors other = new PackedRotors(wiring);
+        for (int i = 0; i < 26; i += 1) {
+            slots.step();
+            assertEquals(0, other.setting(1));
+        }
+        assertEquals(0, slots.setting(1));
+        slots.step();
+        for (int p = 0; p < 26; p += 1) {
+            assertEquals(rotor.convertForward(p, 1),
+                         slots.convertForward(1, p));
+            assertEquals(rotor.convertForward(p, 0),
+                         other.convertForward(1, p));
+        }
+    }
+
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "MZ");
+        for (int p = 0; p < 26; p += 1) {
+            char c = alpha.charAt(p);
+            assertEquals(msg("VI", "notch at %c", c),
+                         c == 'M' || c == 'Z', rotor.atNotch(p));
+        }
+        int[][] distances = { {0, 12}, {1, 11}, {12, 0}, {13, 12},
+                              {24, 1}, {25, 0} };
+        for (int[] d : distances) {
+            assertEquals(msg("VI", "distance from %d", d[0]),
+                         d[1], rotor.notchDistance(d[0]));
+        }
+        setRotor("I", NAVALA, "");
+        assertEquals(-1, rotor.notchDistance(3));
+        assertFalse(rotor.atNotch(3));
     }
 
 }
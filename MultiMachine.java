@@ -0,0 +1,421 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** Many independent machines, or lanes, that convert one character each
+ *  per keystroke, laid out as structures of arrays: for each slot, an
+ *  int[] holding each lane's current conversion-table row and another
+ *  holding its step.  The per-setting conversion tables of every rotor
+ *  in use are concatenated into shared arrays that each lane indexes by
+ *  its rows, so lanes may hold different rotors, settings, and
+ *  plugboards.  Rotors with the same wiring and notches share tables,
+ *  even if the machines were configured separately.
+ *
+ *  As in Machine's compiled path, each lane also keeps a fused table
+ *  for its current settings of every slot but the last, on the way in
+ *  and back out, rebuilt only when one of those slots moves.  A
+ *  keystroke is then five lookups per lane: plugboard, last rotor,
+ *  fused table, last rotor, plugboard.  Each lane counts down the
+ *  keystrokes until one of its rotors reaches a notch; until then only
+ *  its last rotor moves, and only then does it take the full odometer
+ *  step.  This class converts lane by lane; a subclass using the
+ *  incubating Vector API, if compiled and enabled (see of), converts
+ *  many lanes at once with identical results.
+ *  @author KaitoGarcia
+ */
+class MultiMachine {
+
+    /** Return lanes that start in the states of MACHINES, which must
+     *  all have the same alphabet, of at most Rotor.MAX_TABLE_SIZE
+     *  characters, and number of slots.  The lanes use the Vector API
+     *  if the system property VECTOR_PROPERTY is "true" and the vector
+     *  engine is available. */
+    static MultiMachine of(List<Machine> machines) {
+        MultiMachine scalar = new MultiMachine(machines);
+        if (Boolean.getBoolean(VECTOR_PROPERTY)) {
+            try {
+                Class<?> engine = Class.forName(VECTOR_ENGINE);
+                return (MultiMachine) engine
+                    .getDeclaredConstructor(MultiMachine.class)
+                    .newInstance(scalar);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                return scalar;
+            }
+        }
+        return scalar;
+    }
+
+    /** Lanes that start in the states of MACHINES. */
+    MultiMachine(List<Machine> machines) {
+        if (machines.isEmpty()) {
+            throw error("no machines");
+        }
+        Machine first = machines.get(0);
+        _alphabet = first.alphabet();
+        _size = _alphabet.size();
+        _block = _size * _size;
+        _numSlots = first.numRotors();
+        _lanes = machines.size();
+        _width = (_lanes + LANE_ALIGN - 1) / LANE_ALIGN * LANE_ALIGN;
+        if (_size > Rotor.MAX_TABLE_SIZE) {
+            throw error("alphabet too large for a MultiMachine");
+        }
+        _rows = new int[_numSlots][_width];
+        _ends = new int[_numSlots][_width];
+        _steps = new int[_numSlots][_width];
+        _plugForward = new int[_width * _size];
+        _plugBackward = new int[_width * _size];
+        _fused = new int[_width * _size];
+        _levels = new int[_width * (_numSlots - 2) * _size];
+        _clear = new int[_width];
+
+        Map<String, Integer> bases = new HashMap<>();
+        Map<Integer, Rotor> rotors = new HashMap<>();
+        for (Machine m : machines) {
+            if (!sameAlphabet(m.alphabet(), _alphabet)
+                || m.numRotors() != _numSlots) {
+                throw error("machines must have the same alphabet and slots");
+            }
+            for (int k = 0; k < _numSlots; k += 1) {
+                Rotor r = m.rotor(k);
+                int base = bases.size() * 2 * _block;
+                if (bases.putIfAbsent(tableKey(r), base) == null) {
+                    rotors.put(base, r);
+                }
+            }
+        }
+        _forward = new int[bases.size() * 2 * _block];
+        _backward = new int[_forward.length];
+        _runs = new int[_forward.length];
+        for (Map.Entry<Integer, Rotor> e : rotors.entrySet()) {
+            Rotor r = e.getValue();
+            int base = e.getKey();
+            int[][] forward = r.forwardTables(),
+                backward = r.backwardTables();
+            for (int s = 0; s < 2 * _size; s += 1) {
+                int at = base + s * _size;
+                System.arraycopy(forward[s % _size], 0, _forward, at, _size);
+                System.arraycopy(backward[s % _size], 0, _backward, at,
+                                 _size);
+                int run = 0;
+                while (run < _size && !r.atNotch((s + run) % _size)) {
+                    run += 1;
+                }
+                _runs[at] = run;
+            }
+        }
+
+        for (int lane = 0; lane < _width; lane += 1) {
+            Machine m = lane < _lanes ? machines.get(lane) : null;
+            Permutation plug = m == null ? null : m.plugboard();
+            for (int k = 0; k < _numSlots; k += 1) {
+                Rotor r = m == null ? first.rotor(k) : m.rotor(k);
+                int base = bases.get(tableKey(r));
+                int setting = m == null ? 0 : m.setting(k);
+                _rows[k][lane] = base + setting * _size;
+                _ends[k][lane] = base + _block;
+                _steps[k][lane] = r.rotates() ? _size : 0;
+            }
+            for (int c = 0; c < _size; c += 1) {
+                _plugForward[lane * _size + c] =
+                    plug == null ? c : plug.permute(c);
+                _plugBackward[lane * _size + c] =
+                    plug == null ? c : plug.invert(c);
+            }
+            fuse(lane, 0);
+        }
+    }
+
+    /** Return a string that is the same for rotors R whose tables and
+     *  stepping are the same. */
+    private static String tableKey(Rotor r) {
+        int[] wiring = r.forwardTables()[0];
+        StringBuilder result = new StringBuilder();
+        result.append(r.rotates() ? 'R' : 'F');
+        for (int p = 0; p < wiring.length; p += 1) {
+            result.append((char) wiring[p])
+                .append(r.atNotch(p) ? 'N' : '-');
+        }
+        return result.toString();
+    }
+
+    /** Return true iff alphabets A and B have the same characters in the
+     *  same order. */
+    private static boolean sameAlphabet(Alphabet a, Alphabet b) {
+        if (a == b) {
+            return true;
+        } else if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i += 1) {
+            if (a.toChar(i) != b.toChar(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Lanes sharing the layout and tables of ORIGINAL, and starting in
+     *  its current states. */
+    MultiMachine(MultiMachine original) {
+        _alphabet = original._alphabet;
+        _size = original._size;
+        _block = original._block;
+        _numSlots = original._numSlots;
+        _lanes = original._lanes;
+        _width = original._width;
+        _forward = original._forward;
+        _backward = original._backward;
+        _runs = original._runs;
+        _ends = original._ends;
+        _steps = original._steps;
+        _plugForward = original._plugForward;
+        _plugBackward = original._plugBackward;
+        _rows = new int[_numSlots][];
+        for (int k = 0; k < _numSlots; k += 1) {
+            _rows[k] = original._rows[k].clone();
+        }
+        _fused = original._fused.clone();
+        _levels = original._levels.clone();
+        _clear = original._clear.clone();
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the number of entries in the per-lane arrays passed to
+     *  convert(int[], boolean[]): lanes() rounded up to a multiple of
+     *  LANE_ALIGN.  Entries beyond lanes() are never active. */
+    int width() {
+        return _width;
+    }
+
+    /** Return the setting of slot K in LANE. */
+    int setting(int lane, int k) {
+        int base = _ends[k][lane] - _block;
+        return (_rows[k][lane] - base) % _block / _size;
+    }
+
+    /** Return the conversions of MESSAGES, where MESSAGES[L] is
+     *  converted by lane L, which advances once per character of its
+     *  message.  There must be one message per lane.  Lanes are taken
+     *  BLOCK_LANES at a time, each block through to the end of its
+     *  messages, so that the tables of a block's lanes stay in cache. */
+    String[] convert(String[] messages) {
+        if (messages.length != _lanes) {
+            throw error("need one message per lane");
+        }
+        char[][] results = new char[_lanes][];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            results[lane] = new char[messages[lane].length()];
+        }
+        int[] chars = new int[_width];
+        boolean[] active = new boolean[_width];
+        for (int lo = 0; lo < _lanes; lo += BLOCK_LANES) {
+            int hi = Math.min(lo + BLOCK_LANES, _lanes);
+            int longest = 0;
+            for (int lane = lo; lane < hi; lane += 1) {
+                longest = Math.max(longest, messages[lane].length());
+            }
+            for (int i = 0; i < longest; i += 1) {
+                for (int lane = lo; lane < hi; lane += 1) {
+                    active[lane] = i < messages[lane].length();
+                    if (active[lane]) {
+                        chars[lane] =
+                            _alphabet.toInt(messages[lane].charAt(i));
+                    }
+                }
+                convert(chars, active, lo, hi);
+                for (int lane = lo; lane < hi; lane += 1) {
+                    if (active[lane]) {
+                        results[lane][i] = _alphabet.toChar(chars[lane]);
+                    }
+                }
+            }
+        }
+        String[] result = new String[_lanes];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            result[lane] = new String(results[lane]);
+        }
+        return result;
+    }
+
+    /** Advance each lane L for which ACTIVE[L] and replace CHARS[L] (an
+     *  alphabet index) with its conversion by that lane.  Both arrays
+     *  have width() entries; inactive lanes are left alone. */
+    void convert(int[] chars, boolean[] active) {
+        convert(chars, active, 0, _lanes);
+    }
+
+    /** As for convert(CHARS, ACTIVE), but only for lanes LO .. HI-1,
+     *  where LO is a multiple of LANE_ALIGN and HI is one or lanes().
+     *  Other lanes must not be active. */
+    void convert(int[] chars, boolean[] active, int lo, int hi) {
+        int last = _numSlots - 1;
+        int[] rows = _rows[last], steps = _steps[last], clear = _clear;
+        int[] forward = _forward, backward = _backward, fused = _fused;
+        int[] plugForward = _plugForward, plugBackward = _plugBackward;
+        for (int lane = lo; lane < hi; lane += 1) {
+            if (!active[lane]) {
+                continue;
+            }
+            int row;
+            if (clear[lane] == 0) {
+                step(lane);
+                row = rows[lane];
+            } else {
+                clear[lane] -= 1;
+                row = rows[lane] + steps[lane];
+                rows[lane] = row;
+            }
+            int base = lane * _size;
+            int p = plugForward[base + chars[lane]];
+            p = forward[row + p];
+            p = fused[base + p];
+            p = backward[row + p];
+            chars[lane] = plugBackward[base + p];
+        }
+    }
+
+    /** Apply the full stepping of one keystroke to LANE, whose count of
+     *  keystrokes moving only its last rotor has run out.  Rebuild its
+     *  fused tables from the lowest slot that moved, and count the
+     *  keystrokes after this one that will move only its last rotor. */
+    void step(int lane) {
+        int last = _numSlots - 1;
+        int[] lastRows = _rows[last];
+        if (lastRows[lane] >= _ends[last][lane]) {
+            lastRows[lane] -= _block;
+        }
+        boolean carry = false;
+        int low = last;
+        for (int k = 0; k < last; k += 1) {
+            carry |= _runs[_rows[k + 1][lane]] == 0;
+            if (carry && _steps[k][lane] != 0) {
+                advance(k, lane);
+                low = Math.min(low, k);
+            }
+        }
+        advance(last, lane);
+        if (low < last) {
+            fuse(lane, low);
+        }
+        int clear = _runs[lastRows[lane]];
+        for (int k = 1; k < last; k += 1) {
+            if (_runs[_rows[k][lane]] == 0) {
+                clear = 0;
+            }
+        }
+        _clear[lane] = _steps[last][lane] == 0 && clear > 0
+            ? Integer.MAX_VALUE : clear;
+    }
+
+    /** Advance slot K of LANE, whose row is in the first copy of its
+     *  rotor's tables, one position if its rotor rotates. */
+    private void advance(int k, int lane) {
+        int row = _rows[k][lane] + _steps[k][lane];
+        _rows[k][lane] = row == _ends[k][lane] ? row - _block : row;
+    }
+
+    /** Rebuild the fused tables of LANE for slots FROM and up, but not
+     *  the last, from their current settings. */
+    private void fuse(int lane, int from) {
+        int last = _numSlots - 1;
+        int levels = lane * (last - 1) * _size;
+        for (int k = from; k < last; k += 1) {
+            int row = _rows[k][lane];
+            int[] table = k == last - 1 ? _fused : _levels;
+            int at = k == last - 1 ? lane * _size : levels + k * _size;
+            if (k == 0) {
+                System.arraycopy(_forward, row, table, at, _size);
+            } else {
+                int below = levels + (k - 1) * _size;
+                for (int c = 0; c < _size; c += 1) {
+                    table[at + c] =
+                        _backward[row + _levels[below + _forward[row + c]]];
+                }
+            }
+        }
+    }
+
+    /** System property that enables the Vector API engine. */
+    static final String VECTOR_PROPERTY = "enigma.vector";
+
+    /** Name of the Vector API engine class. */
+    private static final String VECTOR_ENGINE = "enigma.VectorMultiMachine";
+
+    /** The per-lane arrays hold a multiple of this many lanes, enough
+     *  for the widest vector of ints. */
+    static final int LANE_ALIGN = 16;
+
+    /** Number of lanes converted together by convert(String[]), a
+     *  multiple of LANE_ALIGN. */
+    static final int BLOCK_LANES = 64;
+
+    /** The common alphabet of the lanes. */
+    final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    final int _size;
+
+    /** Number of rotor slots in each lane. */
+    final int _numSlots;
+
+    /** Number of lanes. */
+    final int _lanes;
+
+    /** Number of lanes, rounded up to a multiple of LANE_ALIGN. */
+    final int _width;
+
+    /** Number of entries in a rotor's conversion table: _size rows, one
+     *  per setting, of _size entries. */
+    final int _block;
+
+    /** Conversion tables of each rotor in use, concatenated, each table
+     *  twice over; entry [B + S * _size + P] of the table at B converts
+     *  P at setting S % _size, for S < 2 * _size. */
+    final int[] _forward, _backward;
+
+    /** _runs[R], where R starts the table row for a setting, is the
+     *  number of consecutive settings from that one at which the rotor
+     *  is not at a notch, at most _size. */
+    final int[] _runs;
+
+    /** _rows[K][L] is the offset of the table row for the current
+     *  setting of slot K of lane L.  It is in the first copy of the
+     *  rotor's table, except that the last slot's may run into the
+     *  second between full steps. */
+    final int[][] _rows;
+
+    /** _ends[K][L] is the offset just past the first copy of the table
+     *  of slot K of lane L. */
+    final int[][] _ends;
+
+    /** _steps[K][L] is _size if slot K of lane L rotates, and otherwise
+     *  0: the amount its row offset advances. */
+    final int[][] _steps;
+
+    /** Plugboard of lane L, and its inverse, at [L * _size ..
+     *  (L+1) * _size - 1]. */
+    final int[] _plugForward, _plugBackward;
+
+    /** The fused table of lane L, at [L * _size .. (L+1) * _size - 1]:
+     *  the conversion, toward the reflector and back, through every slot
+     *  but the last at their current settings. */
+    final int[] _fused;
+
+    /** The fused tables of lane L for slots 0 .. K, for each K below
+     *  _numSlots - 2, in that order from [L * (_numSlots - 2) * _size],
+     *  from which _fused is rebuilt when a higher slot moves. */
+    final int[] _levels;
+
+    /** _clear[L] is the number of keystrokes lane L will take, before
+     *  its next full step, that move only its last rotor. */
+    final int[] _clear;
+}
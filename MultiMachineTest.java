@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MultiMachine class.
+ *  @author KaitoGarcia
+ */
+public class MultiMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval rotors. */
+    private static final String[][] NOTCHES = {
+        {"I", "Q"}, {"II", "E"}, {"III", "V"}, {"IV", "J"}, {"V", "Z"},
+        {"VI", "ZM"}, {"VII", "ZM"}, {"VIII", "ZM"},
+    };
+
+    /** Return all the naval rotors. */
+    private List<Rotor> navalRotors() {
+        List<Rotor> result = new ArrayList<>();
+        for (String[] rotor : NOTCHES) {
+            result.add(new MovingRotor(rotor[0],
+                                       new Permutation(NAVALA.get(rotor[0]),
+                                                       UPPER),
+                                       rotor[1]));
+        }
+        for (String name : new String[] {"Beta", "Gamma"}) {
+            result.add(new FixedRotor(name,
+                                      new Permutation(NAVALA.get(name),
+                                                      UPPER)));
+        }
+        for (String name : new String[] {"B", "C"}) {
+            result.add(new Reflector(name,
+                                     new Permutation(NAVALA.get(name),
+                                                     UPPER)));
+        }
+        return result;
+    }
+
+    /** Return a string of LEN random letters chosen by RAND. */
+    private String randomText(Random rand, int len) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            result.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return a 5-slot machine with rotors and key chosen by RAND from
+     *  ROTORS. */
+    private Machine randomMachine(Random rand, List<Rotor> rotors) {
+        List<String> moving = new ArrayList<>(List.of("I", "II", "III",
+                "IV", "V", "VI", "VII", "VIII"));
+        Collections.shuffle(moving, rand);
+        String[] slots = {rand.nextBoolean() ? "B" : "C",
+                          rand.nextBoolean() ? "Beta" : "Gamma",
+                          moving.get(0), moving.get(1), moving.get(2)};
+        Machine result = new Machine(UPPER, 5, 3, rotors);
+        result.insertRotors(slots);
+        result.setRotors(randomText(rand, 4));
+        List<String> letters = new ArrayList<>(List.of(
+                UPPER_STRING.split("")));
+        Collections.shuffle(letters, rand);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < 2 * rand.nextInt(8); i += 2) {
+            cycles.append("(").append(letters.get(i))
+                .append(letters.get(i + 1)).append(")");
+        }
+        result.setPlugboard(new Permutation(cycles.toString(), UPPER));
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachines() {
+        Random rand = new Random(14);
+        List<Rotor> rotors = navalRotors();
+        List<Machine> machines = new ArrayList<>();
+        String[] messages = new String[37];
+        for (int lane = 0; lane < messages.length; lane += 1) {
+            machines.add(randomMachine(rand, rotors));
+            messages[lane] = randomText(rand, rand.nextInt(700));
+        }
+        MultiMachine multi = MultiMachine.of(machines);
+        String[] results = multi.convert(messages);
+        for (int lane = 0; lane < messages.length; lane += 1) {
+            Machine m = machines.get(lane);
+            assertEquals(msg("lane", "%d", lane),
+                         m.convert(messages[lane]), results[lane]);
+            for (int k = 0; k < 5; k += 1) {
+                assertEquals(msg("lane", "%d slot %d", lane, k),
+                             m.setting(k), multi.setting(lane, k));
+            }
+        }
+    }
+
+    @Test
+    public void testSeparatelyConfigured() {
+        Random rand = new Random(16);
+        List<Machine> machines = new ArrayList<>();
+        String[] messages = new String[20];
+        for (int lane = 0; lane < messages.length; lane += 1) {
+            machines.add(randomMachine(rand, navalRotors()));
+            messages[lane] = randomText(rand, 1500 + rand.nextInt(500));
+        }
+        MultiMachine multi = MultiMachine.of(machines);
+        String[] results = multi.convert(messages);
+        for (int lane = 0; lane < messages.length; lane += 1) {
+            Machine m = machines.get(lane);
+            assertEquals(msg("lane", "%d", lane),
+                         m.convert(messages[lane]), results[lane]);
+            for (int k = 0; k < 5; k += 1) {
+                assertEquals(msg("lane", "%d slot %d", lane, k),
+                             m.setting(k), multi.setting(lane, k));
+            }
+        }
+    }
+
+    @Test
+    public void testTwoSlots() {
+        Random rand = new Random(17);
+        List<Rotor> rotors = navalRotors();
+        List<Machine> machines = new ArrayList<>();
+        String[] messages = new String[3];
+        for (int lane = 0; lane < messages.length; lane += 1) {
+            Machine m = new Machine(UPPER, 2, 1, rotors);
+            m.insertRotors(new String[] {"B", NOTCHES[lane][0]});
+            m.setRotors(randomText(rand, 1));
+            m.setPlugboard(new Permutation("(AZ)", UPPER));
+            machines.add(m);
+            messages[lane] = randomText(rand, 100);
+        }
+        String[] results = MultiMachine.of(machines).convert(messages);
+        for (int lane = 0; lane < messages.length; lane += 1) {
+            assertEquals(msg("lane", "%d", lane),
+                         machines.get(lane).convert(messages[lane]),
+                         results[lane]);
+        }
+    }
+
+    @Test
+    public void testIdleLanes() {
+        Random rand = new Random(15);
+        List<Rotor> rotors = navalRotors();
+        List<Machine> machines = List.of(randomMachine(rand, rotors),
+                                         randomMachine(rand, rotors));
+        MultiMachine multi = MultiMachine.of(machines);
+        assertEquals(2, multi.lanes());
+        assertEquals(0, multi.width() % MultiMachine.LANE_ALIGN);
+        int before = multi.setting(1, 4);
+        int[] chars = new int[multi.width()];
+        boolean[] active = new boolean[multi.width()];
+        active[0] = true;
+        multi.convert(chars, active);
+        assertEquals(before, multi.setting(1, 4));
+        assertEquals(0, chars[1]);
+        assertEquals(machines.get(0).convert(0), chars[0]);
+    }
+}
@@ -0,0 +1,607 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The stepping rules of a Machine, applied to a vector of rotor settings
+ *  rather than to the rotors themselves.  Before each keystroke, if the
+ *  leftmost rotor at a notch (not counting the reflector) is in slot K,
+ *  the rotors in slots K-1 through the next-to-last advance; the rotor
+ *  in the last slot always advances.  An Odometer can apply any number of
+ *  keystrokes without simulating them one at a time, and remembers the
+ *  trails of states it has walked to do so, so that it is shared by
+ *  every machine with the same rotors in its slots (see SlotWiring);
+ *  the methods that use trails are synchronized.
+ *  @author KaitoGarcia
+ */
+class Odometer {
+
+    /** An odometer for the rotors in SLOTS, SLOTS.get(0) being the
+     *  reflector. */
+    Odometer(List<Rotor> slots) {
+        _numSlots = slots.size();
+        _size = slots.get(0).size();
+        _rotates = new boolean[_numSlots];
+        _notches = new boolean[_numSlots][_size];
+        for (int i = 0; i < _numSlots; i += 1) {
+            Rotor r = slots.get(i);
+            _rotates[i] = r.rotates();
+            for (int p = 0; p < _size; p += 1) {
+                _notches[i][p] = r.atNotch(p);
+            }
+        }
+        Rotor fast = slots.get(_numSlots - 1);
+        _fastDistance = new int[_size];
+        for (int p = 0; p < _size; p += 1) {
+            _fastDistance[p] = fast.notchDistance(p);
+        }
+    }
+
+    /** Return the number of slots I govern. */
+    int numSlots() {
+        return _numSlots;
+    }
+
+    /** Return the slot of the leftmost rotor of SETTINGS that is at a
+     *  notch, looking only at slots 1 .. LIMIT - 1, or -1 if there is
+     *  none. */
+    private int leftmostNotch(int[] settings, int limit) {
+        for (int k = 1; k < limit; k += 1) {
+            if (_notches[k][settings[k]]) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Advance rotor K of SETTINGS by one position, if it rotates,
+     *  counting the move in ADVANCES[K] unless ADVANCES is null. */
+    private void advanceSlot(int[] settings, int k, long[] advances) {
+        if (_rotates[k]) {
+            settings[k] = settings[k] + 1 == _size ? 0 : settings[k] + 1;
+            if (advances != null) {
+                advances[k] += 1;
+            }
+        }
+    }
+
+    /** Apply one keystroke to SETTINGS. */
+    void step(int[] settings) {
+        step(settings, null);
+    }
+
+    /** Apply one keystroke to SETTINGS, counting the moves of each slot
+     *  in ADVANCES unless it is null. */
+    private void step(int[] settings, long[] advances) {
+        int k = leftmostNotch(settings, _numSlots);
+        if (k != -1) {
+            for (int j = k - 1; j < _numSlots - 1; j += 1) {
+                advanceSlot(settings, j, advances);
+            }
+        }
+        advanceSlot(settings, _numSlots - 1, advances);
+    }
+
+    /** Apply COUNT keystrokes to SETTINGS, skipping over stretches in
+     *  which only the last rotor moves. */
+    private void run(int[] settings, long count) {
+        run(settings, count, null);
+    }
+
+    /** Apply COUNT keystrokes to SETTINGS, as for run(int[], long),
+     *  counting the moves of each slot in ADVANCES unless it is null.
+     *  Returns the number of double steps: keystrokes on which a rotor
+     *  other than the last moved because it was itself at a notch. */
+    private long run(int[] settings, long count, long[] advances) {
+        int fast = _numSlots - 1;
+        long doubles = 0;
+        while (count > 0) {
+            if (leftmostNotch(settings, fast) != -1) {
+                step(settings, advances);
+                count -= 1;
+                doubles += 1;
+                continue;
+            }
+            int distance = _fastDistance[settings[fast]];
+            if (distance == 0) {
+                step(settings, advances);
+                count -= 1;
+            } else if (!_rotates[fast]) {
+                break;
+            } else {
+                long jump = distance == -1 ? count : Math.min(distance, count);
+                settings[fast] = (int) ((settings[fast] + jump) % _size);
+                if (advances != null) {
+                    advances[fast] += jump;
+                }
+                count -= jump;
+            }
+        }
+        return doubles;
+    }
+
+    /** Apply COUNT keystrokes to SETTINGS, adding the moves of each slot
+     *  K to ADVANCES[K], and return the number of double steps among
+     *  them (see run).  Takes time proportional to the number of
+     *  revolutions of the last rotor and of moves of the others. */
+    long tally(int[] settings, long count, long[] advances) {
+        return run(settings, count, advances);
+    }
+
+    /** Return the number of keystrokes in a revolution: the unit in
+     *  which advance and period take keystrokes. */
+    private long unit() {
+        return _rotates[_numSlots - 1] ? _size : 1;
+    }
+
+    /** Apply COUNT >= 0 keystrokes to SETTINGS.  Fewer than MIN_STRIDE
+     *  revolutions of the last rotor are simply run.  Longer jumps go
+     *  through the trails I remember (see Trail): once the states from
+     *  SETTINGS have been walked as far as the jump, or round their
+     *  cycle, a jump of any length takes modular arithmetic and at most
+     *  two strides of revolutions.  The first jump from a state walks
+     *  as far as it goes or to the end of the cycle, whichever is
+     *  nearer. */
+    void advance(int[] settings, long count) {
+        if (count < 0) {
+            throw error("cannot step a machine backwards");
+        }
+        long unit = unit();
+        long revolutions = count / unit;
+        if (revolutions >= MIN_STRIDE) {
+            revolve(settings, revolutions);
+        } else {
+            run(settings, revolutions * unit);
+        }
+        run(settings, count % unit);
+    }
+
+    /** Apply REVOLUTIONS revolutions of the last rotor to SETTINGS,
+     *  starting from the first checkpoint of a trail that the states
+     *  from SETTINGS reach within _maxStride revolutions, or else from
+     *  a new trail starting at SETTINGS. */
+    private synchronized void revolve(int[] settings, long revolutions) {
+        tidy();
+        int[] start = settings.clone();
+        long unit = unit();
+        for (long done = 0; done <= _maxStride; done += 1) {
+            Mark mark = marks(settings);
+            if (mark != null) {
+                locate(mark._trail, mark._revolution, revolutions - done,
+                       settings);
+                return;
+            } else if (done == revolutions) {
+                return;
+            }
+            run(settings, unit);
+        }
+        locate(newTrail(start), 0, revolutions, settings);
+    }
+
+    /** Return the pre-period, period, and per-slot advances of the
+     *  sequence of states that starts at SETTINGS, or null if the
+     *  pre-period and period together exceed LIMIT keystrokes.  The
+     *  cycle is found among the states at the start of each revolution
+     *  of the last rotor, whose period in keystrokes is the revolution
+     *  period times the length of a revolution (the last rotor returns
+     *  to its setting only after whole revolutions), by walking a trail
+     *  from SETTINGS until it reaches one of its own checkpoints.  The
+     *  pre-period is then found by bisection among revolutions and
+     *  pinned down within its last revolution.
+     *
+     *  The first walk round a cycle takes time proportional to the
+     *  number of revolutions in the pre-period and period, which grows
+     *  about as the alphabet size to the power of the number of rotating
+     *  slots less one, and gives up after about 2 * LIMIT keystrokes'
+     *  worth of revolutions.  The walk is remembered, with the cycle,
+     *  for this odometer's rotors, so later calls for any state that
+     *  reaches a walked cycle take time proportional to a stride times
+     *  the log of the pre-period, and the result for each state is kept
+     *  as well. */
+    synchronized StatePeriod period(int[] settings, long limit) {
+        tidy();
+        StateKey key = new StateKey(settings.clone());
+        StatePeriod result = _periods.get(key);
+        if (result == null) {
+            long unit = unit();
+            long most = limit / unit > Long.MAX_VALUE / 4 ? Long.MAX_VALUE
+                : 2 * (limit / unit + 1) + 2 * _maxStride;
+            result = period(settings, unit, most);
+            if (result == null) {
+                return null;
+            }
+            _periods.put(key, result);
+        }
+        return result.prePeriod() + result.period() > limit ? null : result;
+    }
+
+    /** Return the StatePeriod of the states from SETTINGS, with
+     *  revolutions of UNIT keystrokes, or null if that takes walking
+     *  trails more than MOST revolutions further. */
+    private StatePeriod period(int[] settings, long unit, long most) {
+        Mark mark = marks(settings);
+        Trail trail = mark == null ? newTrail(settings) : mark._trail;
+        long position = mark == null ? 0 : mark._revolution;
+        Trail cycle = trail;
+        while (cycle._cycleLength == 0) {
+            if (cycle._next != null) {
+                cycle = cycle._next;
+            } else if (most == 0) {
+                return null;
+            } else {
+                most -= extend(cycle, most);
+            }
+        }
+
+        long length = cycle._cycleLength;
+        int[] tortoise = new int[_numSlots], hare = new int[_numSlots];
+        long mu = 0;
+        if (!periodic(trail, position, 0, length, tortoise, hare)) {
+            long hi = 1;
+            while (!periodic(trail, position, hi, length, tortoise, hare)) {
+                hi *= 2;
+            }
+            long lo = hi / 2;
+            while (hi - lo > 1) {
+                long mid = (lo + hi) >>> 1;
+                if (periodic(trail, position, mid, length, tortoise, hare)) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            mu = hi;
+        }
+        long prePeriod = 0;
+        if (mu > 0) {
+            periodic(trail, position, mu - 1, length, tortoise, hare);
+            prePeriod = (mu - 1) * unit;
+            while (!Arrays.equals(tortoise, hare)) {
+                step(tortoise);
+                step(hare);
+                prePeriod += 1;
+            }
+        }
+        return new StatePeriod(prePeriod, length * unit,
+                               cycle._cycleMoves.clone());
+    }
+
+    /** Set TORTOISE to the state M revolutions after revolution POSITION
+     *  of TRAIL, and HARE to the state LENGTH revolutions after that, and
+     *  return true iff they are the same. */
+    private boolean periodic(Trail trail, long position, long m, long length,
+                             int[] tortoise, int[] hare) {
+        locate(trail, position, m, tortoise);
+        locate(trail, position, m + length, hare);
+        return Arrays.equals(tortoise, hare);
+    }
+
+    /** Set RESULT to the state DISTANCE revolutions after revolution
+     *  POSITION of TRAIL, walking trails further as needed. */
+    private void locate(Trail trail, long position, long distance,
+                        int[] result) {
+        while (true) {
+            long length = trail._cycleLength;
+            if (length > 0
+                && distance >= trail._cycleStart + length - position) {
+                if (position < trail._cycleStart) {
+                    distance -= trail._cycleStart - position;
+                    position = trail._cycleStart;
+                }
+                position = trail._cycleStart
+                    + (position - trail._cycleStart + distance % length)
+                    % length;
+                distance = 0;
+            }
+            long ahead = trail._walked - position;
+            if (distance <= ahead) {
+                break;
+            } else if (trail._next != null) {
+                distance -= ahead;
+                position = trail._nextOffset;
+                trail = trail._next;
+            } else {
+                extend(trail, distance - ahead);
+            }
+        }
+        long target = position + distance;
+        if (target == trail._walked) {
+            System.arraycopy(trail._end, 0, result, 0, _numSlots);
+        } else {
+            int j = (int) (target / trail._stride);
+            System.arraycopy(trail._states.get(j), 0, result, 0, _numSlots);
+            run(result, (target - j * trail._stride) * unit());
+        }
+    }
+
+    /** Walk TRAIL at most MOST revolutions further, stopping early if it
+     *  reaches one of its own checkpoints, which closes its cycle, or
+     *  one of a trail that does not lead back to it, which it joins.
+     *  Returns the number of revolutions walked. */
+    private long extend(Trail trail, long most) {
+        long unit = unit();
+        for (long done = 1; done <= most; done += 1) {
+            run(trail._end, unit, trail._endMoves);
+            trail._walked += 1;
+            Mark marks = marks(trail._end);
+            for (Mark m = marks; m != null; m = m._other) {
+                if (m._trail == trail) {
+                    trail.close(m._revolution);
+                    return done;
+                }
+            }
+            for (Mark m = marks; m != null; m = m._other) {
+                if (!leadsTo(m._trail, trail)) {
+                    trail._next = m._trail;
+                    trail._nextOffset = m._revolution;
+                    return done;
+                }
+            }
+            if ((trail._walked & (trail._stride - 1)) == 0) {
+                trail._states.add(trail._end.clone());
+                trail._moves.add(trail._endMoves.clone());
+                mark(trail, trail._states.size() - 1);
+                if (trail._states.size() > MAX_CHECKPOINTS) {
+                    coarsen(trail);
+                }
+            }
+        }
+        return most;
+    }
+
+    /** Return true iff following FROM and the trails it joins reaches
+     *  TRAIL. */
+    private static boolean leadsTo(Trail from, Trail trail) {
+        for (Trail t = from; t != null; t = t._next) {
+            if (t == trail) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a new trail starting at a copy of START. */
+    private Trail newTrail(int[] start) {
+        Trail result = new Trail(start);
+        _trails.add(result);
+        mark(result, 0);
+        return result;
+    }
+
+    /** Return the checkpoints whose state is SETTINGS, or null.  Most
+     *  states are not checkpoints, and _filter rules them out without a
+     *  hash table lookup. */
+    private Mark marks(int[] settings) {
+        int hash = StateKey.hash(settings);
+        int bit = hash & (FILTER_BITS - 1);
+        if ((_filter[bit >>> WORD_SHIFT] & 1L << bit) == 0) {
+            return null;
+        }
+        return _marks.get(new StateKey(settings));
+    }
+
+    /** Record checkpoint J of TRAIL among _marks. */
+    private void mark(Trail trail, int j) {
+        Mark mark = new Mark(trail, j * trail._stride);
+        StateKey key = new StateKey(trail._states.get(j));
+        int bit = key.hashCode() & (FILTER_BITS - 1);
+        _filter[bit >>> WORD_SHIFT] |= 1L << bit;
+        mark._other = _marks.put(key, mark);
+    }
+
+    /** Drop every other checkpoint of TRAIL, doubling its stride. */
+    private void coarsen(Trail trail) {
+        ArrayList<int[]> states = new ArrayList<>();
+        ArrayList<long[]> moves = new ArrayList<>();
+        for (int j = 0; j < trail._states.size(); j += 1) {
+            if (j % 2 == 0) {
+                states.add(trail._states.get(j));
+                moves.add(trail._moves.get(j));
+                continue;
+            }
+            StateKey key = new StateKey(trail._states.get(j));
+            long revolution = j * trail._stride;
+            Mark prev = null;
+            for (Mark m = _marks.get(key); m != null; m = m._other) {
+                if (m._trail == trail && m._revolution == revolution) {
+                    if (prev != null) {
+                        prev._other = m._other;
+                    } else if (m._other != null) {
+                        _marks.put(key, m._other);
+                    } else {
+                        _marks.remove(key);
+                    }
+                    break;
+                }
+                prev = m;
+            }
+        }
+        trail._states = states;
+        trail._moves = moves;
+        trail._stride *= 2;
+        _maxStride = Math.max(_maxStride, trail._stride);
+    }
+
+    /** Forget all my trails and periods if there are too many. */
+    private void tidy() {
+        if (_trails.size() > MAX_TRAILS || _periods.size() > MAX_PERIODS) {
+            _marks.clear();
+            Arrays.fill(_filter, 0);
+            _trails.clear();
+            _periods.clear();
+            _maxStride = MIN_STRIDE;
+        }
+    }
+
+    /** The states at the start of each revolution of the last rotor
+     *  from some first state, as far as they have been walked, kept as
+     *  checkpoints every _stride revolutions (the stride doubling
+     *  whenever there are more than MAX_CHECKPOINTS of them).  A trail
+     *  that reaches one of its own checkpoints has closed its cycle: as
+     *  checkpoints are only ever dropped, never added behind the walk,
+     *  the first such checkpoint is reached exactly one period after it
+     *  was recorded.  A trail that reaches a checkpoint of another
+     *  trail joins it, and is walked no further. */
+    private class Trail {
+
+        /** A trail starting at a copy of START. */
+        Trail(int[] start) {
+            _states.add(start.clone());
+            _moves.add(new long[_numSlots]);
+            _end = start.clone();
+            _endMoves = new long[_numSlots];
+        }
+
+        /** Close my cycle at revolution START, at which I am now again. */
+        void close(long start) {
+            _cycleStart = start;
+            _cycleLength = _walked - start;
+            long[] before = _moves.get((int) (start / _stride));
+            _cycleMoves = new long[_numSlots];
+            for (int k = 0; k < _numSlots; k += 1) {
+                _cycleMoves[k] = _endMoves[k] - before[k];
+            }
+        }
+
+        /** States after 0, _stride, 2 * _stride, ... revolutions. */
+        private ArrayList<int[]> _states = new ArrayList<>();
+
+        /** Advances of each slot up to each of _states. */
+        private ArrayList<long[]> _moves = new ArrayList<>();
+
+        /** Revolutions between checkpoints, a power of 2. */
+        private long _stride = MIN_STRIDE;
+
+        /** Revolutions walked. */
+        private long _walked;
+
+        /** State after _walked revolutions. */
+        private final int[] _end;
+
+        /** Advances of each slot up to _end. */
+        private final long[] _endMoves;
+
+        /** Revolution at which my cycle starts and its length, or 0 and 0
+         *  if it has not been closed.  _cycleStart is a checkpoint but
+         *  need not be the first periodic revolution. */
+        private long _cycleStart, _cycleLength;
+
+        /** Advances of each slot in one period, once closed. */
+        private long[] _cycleMoves;
+
+        /** The trail I have joined, or null, and the revolution of that
+         *  trail that follows my last one. */
+        private Trail _next;
+
+        /** See _next. */
+        private long _nextOffset;
+    }
+
+    /** A checkpoint of a trail, kept in _marks under its state. */
+    private static class Mark {
+
+        /** Checkpoint REVOLUTION of TRAIL. */
+        Mark(Trail trail, long revolution) {
+            _trail = trail;
+            _revolution = revolution;
+        }
+
+        /** The trail. */
+        private final Trail _trail;
+
+        /** Revolutions of _trail before this checkpoint. */
+        private final long _revolution;
+
+        /** Another checkpoint with the same state, or null. */
+        private Mark _other;
+    }
+
+    /** A state as a hash key; its array must not change while it is a
+     *  key of a map. */
+    private static class StateKey {
+
+        /** A key for SETTINGS. */
+        StateKey(int[] settings) {
+            _settings = settings;
+            _hash = hash(settings);
+        }
+
+        /** Return the hash code of a key for SETTINGS. */
+        static int hash(int[] settings) {
+            int hash = Arrays.hashCode(settings);
+            return hash ^ (hash >>> (Integer.SIZE / 2));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StateKey
+                && Arrays.equals(_settings, ((StateKey) obj)._settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The state. */
+        private final int[] _settings;
+
+        /** Hash code of _settings. */
+        private final int _hash;
+    }
+
+    /** Fewest revolutions between checkpoints of a trail, and fewest
+     *  in a jump that goes through trails.  A power of 2. */
+    static final int MIN_STRIDE = 64;
+
+    /** Most checkpoints a trail keeps before doubling its stride. */
+    private static final int MAX_CHECKPOINTS = 1 << 12;
+
+    /** Most trails kept; beyond this all are forgotten. */
+    private static final int MAX_TRAILS = 64;
+
+    /** Most periods kept; beyond this all trails are forgotten. */
+    private static final int MAX_PERIODS = 1 << 10;
+
+    /** Bits in _filter. */
+    private static final int FILTER_BITS = 1 << 18;
+
+    /** Log2 of the number of bits in a word of _filter. */
+    private static final int WORD_SHIFT = 6;
+
+    /** Checkpoints of all my trails, by state. */
+    private final HashMap<StateKey, Mark> _marks = new HashMap<>();
+
+    /** Bit H of _filter is set if some state in _marks has a hash code
+     *  whose low bits are H, and perhaps if one had. */
+    private final long[] _filter = new long[FILTER_BITS >>> WORD_SHIFT];
+
+    /** My trails. */
+    private final ArrayList<Trail> _trails = new ArrayList<>();
+
+    /** Largest stride of any of my trails. */
+    private long _maxStride = MIN_STRIDE;
+
+    /** The periods found so far, by starting state. */
+    private final HashMap<StateKey, StatePeriod> _periods = new HashMap<>();
+
+    /** Number of rotor slots. */
+    private final int _numSlots;
+
+    /** Size of the rotors' alphabet. */
+    private final int _size;
+
+    /** _rotates[K] is true iff the rotor in slot K can advance. */
+    private final boolean[] _rotates;
+
+    /** _notches[K][P] is true iff slot K's rotor is at a notch at P. */
+    private final boolean[][] _notches;
+
+    /** Keystrokes until the last rotor reaches a notch from each
+     *  position, or -1 if it has no notch. */
+    private final int[] _fastDistance;
+}
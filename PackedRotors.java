@@ -0,0 +1,205 @@
+package enigma;
+
+/** The settings of the rotors in a machine's slots, over a SlotWiring
+ *  that it may share with any number of others: the setting of each
+ *  slot and the conversion table rows for those settings.  Converting
+ *  and stepping touch only these arrays and the wiring's, never the
+ *  Rotor objects, so the same code runs whatever kinds of rotors are in
+ *  use.  Slot 0 holds the reflector.
+ *  @author KaitoGarcia
+ */
+class PackedRotors {
+
+    /** The rotors wired as in WIRING, all at setting 0. */
+    PackedRotors(SlotWiring wiring) {
+        _wiring = wiring;
+        _numSlots = wiring._numSlots;
+        _size = wiring._size;
+        _words = wiring._words;
+        _tabled = wiring._tabled;
+        _steps = wiring._steps;
+        _notches = wiring._notches;
+        _forwardTables = wiring._forwardTables;
+        _backwardTables = wiring._backwardTables;
+        _forwardMaps = wiring._forwardMaps;
+        _backwardMaps = wiring._backwardMaps;
+        _settings = new int[_numSlots];
+        _forwardRows = new int[_numSlots][];
+        _backwardRows = new int[_numSlots][];
+        for (int k = 0; k < _numSlots; k += 1) {
+            selectRows(k);
+        }
+    }
+
+    /** A copy of ORIGINAL, at the same settings, that can be stepped
+     *  independently of it. */
+    PackedRotors(PackedRotors original) {
+        _wiring = original._wiring;
+        _numSlots = original._numSlots;
+        _size = original._size;
+        _words = original._words;
+        _tabled = original._tabled;
+        _steps = original._steps;
+        _notches = original._notches;
+        _forwardTables = original._forwardTables;
+        _backwardTables = original._backwardTables;
+        _forwardMaps = original._forwardMaps;
+        _backwardMaps = original._backwardMaps;
+        _settings = original._settings.clone();
+        _forwardRows = original._forwardRows.clone();
+        _backwardRows = original._backwardRows.clone();
+    }
+
+    /** Return my wiring. */
+    SlotWiring wiring() {
+        return _wiring;
+    }
+
+    /** Return the number of slots. */
+    int numSlots() {
+        return _numSlots;
+    }
+
+    /** Return the setting of slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Set slot K to setting POSN. */
+    void set(int k, int posn) {
+        _settings[k] = posn;
+        selectRows(k);
+    }
+
+    /** Point the current table rows of slot K at its setting. */
+    private void selectRows(int k) {
+        if (_tabled) {
+            _forwardRows[k] = _forwardTables[k][_settings[k]];
+            _backwardRows[k] = _backwardTables[k][_settings[k]];
+        }
+    }
+
+    /** Return true iff the rotor in slot K is at a notch. */
+    boolean atNotch(int k) {
+        int p = _settings[k];
+        return (_notches[k * _words + (p >>> WORD_SHIFT)] & (1L << p)) != 0;
+    }
+
+    /** Advance slot K one position if its rotor rotates. */
+    private void advance(int k) {
+        int p = _settings[k] + _steps[k];
+        _settings[k] = p == _size ? 0 : p;
+        selectRows(k);
+    }
+
+    /** Apply the stepping of one keystroke.  Returns true iff a slot
+     *  other than the last may have moved. */
+    boolean step() {
+        int last = _numSlots - 1;
+        int k = 1;
+        while (k <= last && !atNotch(k)) {
+            k += 1;
+        }
+        boolean moved = k <= last;
+        for (int j = k - 1; j < last; j += 1) {
+            advance(j);
+        }
+        advance(last);
+        return moved;
+    }
+
+    /** Return the conversion of P through slot K toward the reflector. */
+    int convertForward(int k, int p) {
+        if (_tabled) {
+            return _forwardRows[k][p];
+        }
+        return shift(_forwardMaps[k], p, _settings[k]);
+    }
+
+    /** Return the conversion of E through slot K away from the
+     *  reflector. */
+    int convertBackward(int k, int e) {
+        if (_tabled) {
+            return _backwardRows[k][e];
+        }
+        return shift(_backwardMaps[k], e, _settings[k]);
+    }
+
+    /** Return the conversion of P through every slot to the reflector
+     *  and back. */
+    int convert(int p) {
+        int last = _numSlots - 1;
+        if (_tabled) {
+            int[][] forward = _forwardRows, backward = _backwardRows;
+            for (int k = last; k >= 0; k -= 1) {
+                p = forward[k][p];
+            }
+            for (int k = 1; k <= last; k += 1) {
+                p = backward[k][p];
+            }
+            return p;
+        }
+        for (int k = last; k >= 0; k -= 1) {
+            p = shift(_forwardMaps[k], p, _settings[k]);
+        }
+        for (int k = 1; k <= last; k += 1) {
+            p = shift(_backwardMaps[k], p, _settings[k]);
+        }
+        return p;
+    }
+
+    /** Return the result of applying MAP to contact P of a rotor at
+     *  setting S. */
+    private int shift(int[] map, int p, int s) {
+        int contact = p + s;
+        if (contact >= _size) {
+            contact -= _size;
+        }
+        int exit = map[contact] - s;
+        if (exit < 0) {
+            exit += _size;
+        }
+        return exit;
+    }
+
+    /** Log2 of the number of bits in a word of _notches. */
+    private static final int WORD_SHIFT = SlotWiring.WORD_SHIFT;
+
+    /** The wiring of my slots. */
+    private final SlotWiring _wiring;
+
+    /* The fields below up to _settings are _wiring's, held here as well
+     * so that stepping and converting need not go through it. */
+
+    /** Number of slots. */
+    private final int _numSlots;
+
+    /** Size of the rotors' alphabet. */
+    private final int _size;
+
+    /** Words of _notches per slot. */
+    private final int _words;
+
+    /** True iff conversions use the rotors' precomputed tables. */
+    private final boolean _tabled;
+
+    /** Current setting of each slot. */
+    private final int[] _settings;
+
+    /** Amount each slot advances when stepped: 1 if its rotor rotates,
+     *  else 0. */
+    private final int[] _steps;
+
+    /** Notch bitmasks: bit P of words [K * _words .. (K+1) * _words - 1]
+     *  is set iff slot K's rotor is at a notch at setting P. */
+    private final long[] _notches;
+
+    /** Each slot's rotor's conversion tables, or nulls if !_tabled. */
+    private final int[][][] _forwardTables, _backwardTables;
+
+    /** Each slot's rotor's wiring at setting 0. */
+    private final int[][] _forwardMaps, _backwardMaps;
+
+    /** Each slot's conversion table rows at its current setting. */
+    private final int[][] _forwardRows, _backwardRows;
+}
@@ -1,9 +1,11 @@
 package enigma;
-import java.util.HashMap;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The mapping is held in dense
+ *  forward and inverse index tables, so that permuting or inverting a
+ *  value is a single array access.
  *  @author KaitoGarcia
  */
 class Permutation {
@@ -15,41 +17,102 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cyclesHash = new HashMap<>();
+        _forward = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = -1;
+        }
         addCycle(cycles);
 
-        for (int i = 0; i < _alphabet.size(); i++) {
-            if (!_cyclesHash.containsKey(_alphabet.toChar(i))) {
-                _cyclesHash.put(_alphabet.toChar(i), _alphabet.toChar(i));
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == -1) {
+                _forward[i] = i;
             }
         }
+        _inverse = invertTable(_forward);
+        _derangement = !hasFixedPoint(_forward);
+    }
 
+    /** A Permutation of ALPHABET that maps index K to FORWARD[K].  FORWARD
+     *  must be a bijection on 0 .. ALPHABET.size() - 1; it is copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = invertTable(_forward);
+        _derangement = !hasFixedPoint(_forward);
     }
 
+    /** A Permutation of ALPHABET that maps index K to FORWARD[K], and
+     *  whose inverse maps K to INVERSE[K].  The tables are checked to be
+     *  inverse bijections, but are not copied: the caller must not
+     *  change them. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        int n = alphabet.size();
+        if (forward.length != n || inverse.length != n) {
+            throw error("permutation table has wrong size");
+        }
+        for (int i = 0; i < n; i += 1) {
+            int v = forward[i];
+            if (v < 0 || v >= n || inverse[v] != i) {
+                throw error("not a permutation");
+            }
+        }
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _derangement = !hasFixedPoint(_forward);
+    }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  CYCLE may hold several parenthesized cycles. */
     private void addCycle(String cycle) {
-
-        String tempCycle = cycle;
-        tempCycle = tempCycle.replace("(", " ");
-        tempCycle = tempCycle.replace(")", " ");
-        String[] arrCycle = tempCycle.split(" ");
-
-        for (String a : arrCycle) {
-            if (a.length() == 1) {
-                _cyclesHash.put(a.charAt(0), a.charAt(0));
+        int first = -1, prev = -1;
+        for (int k = 0; k < cycle.length(); k += 1) {
+            char ch = cycle.charAt(k);
+            if (ch == '(' || ch == ')' || Character.isWhitespace(ch)) {
+                if (first != -1) {
+                    _forward[prev] = first;
+                }
+                first = prev = -1;
             } else {
-                for (int i = 0; i < a.length(); i++) {
-                    if (i + 1 != a.length()) {
-                        _cyclesHash.put(a.charAt(i), a.charAt(i + 1));
-                    } else {
-                        _cyclesHash.put(a.charAt(i), a.charAt(0));
-                    }
+                if (!_alphabet.contains(ch)) {
+                    throw error("not in alphabet");
+                }
+                int index = _alphabet.toInt(ch);
+                if (_forward[index] != -1 || index == first
+                    || index == prev) {
+                    throw error("character %c repeated in cycles", ch);
                 }
+                if (first == -1) {
+                    first = index;
+                } else {
+                    _forward[prev] = index;
+                }
+                prev = index;
             }
+        }
+        if (first != -1) {
+            _forward[prev] = first;
+        }
+    }
 
+    /** Return the inverse of the bijection FORWARD, throwing an
+     *  EnigmaException if FORWARD is not one. */
+    private static int[] invertTable(int[] forward) {
+        int[] inverse = new int[forward.length];
+        for (int i = 0; i < inverse.length; i += 1) {
+            inverse[i] = -1;
+        }
+        for (int i = 0; i < forward.length; i += 1) {
+            int v = forward[i];
+            if (v < 0 || v >= forward.length || inverse[v] != -1) {
+                throw error("not a permutation");
+            }
+            inverse[v] = i;
         }
+        return inverse;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -63,77 +126,42 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char charP = _alphabet.toChar(wrap(p));
-        if (!alphabet().contains(charP)) {
-            throw new EnigmaException("not in alphabet");
-
-        } else if (_cyclesHash.isEmpty() || !_cyclesHash.containsKey(charP)) {
-            return p;
-
+        if (p >= 0 && p < _forward.length) {
+            return _forward[p];
         }
-        return _alphabet.toInt(_cyclesHash.get(charP));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char charC = _alphabet.toChar(wrap(c));
-        if (!alphabet().contains(charC)) {
-            throw new EnigmaException("not in alphabet");
-
-        } else if (_cyclesHash.isEmpty()
-                || !_cyclesHash.containsKey(charC)) {
-            return c;
-        }
-
-        char newC = charC;
-        for (int i = 0; i < _cyclesHash.size(); i++) {
-            if (_cyclesHash.get(_alphabet.toChar(i)) == charC) {
-                newC = _alphabet.toChar(i);
-            }
+        if (c >= 0 && c < _inverse.length) {
+            return _inverse[c];
         }
-        return _alphabet.toInt(newC);
-
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
         in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (!alphabet().contains(p)) {
+        if (!_alphabet.contains(p)) {
             throw new EnigmaException("not in alphabet");
-
-        } else if (_cyclesHash.isEmpty() || !_cyclesHash.containsKey(p)) {
-            return p;
-
         }
-        return _cyclesHash.get(p);
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!alphabet().contains(c)) {
+        if (!_alphabet.contains(c)) {
             throw new EnigmaException("not in alphabet");
-
-        } else if (_cyclesHash.isEmpty() || !_cyclesHash.containsKey(c)) {
-            return c;
         }
-
-        char newC = c;
-        for (int i = 0; i < _cyclesHash.size(); i++) {
-
-            char value = _alphabet.toChar(i);
-            if (_cyclesHash.get(value) == c) {
-                newC = value;
-                break;
-            }
-        }
-        return newC;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -144,26 +172,39 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (HashMap.Entry<Character, Character> letter
-                : _cyclesHash.entrySet()) {
-            if (letter.getKey() == letter.getValue()) {
-                return false;
+        return _derangement;
+    }
+
+    /** Return a copy of my forward table: entry K is permute(K). */
+    int[] forwardTable() {
+        return _forward.clone();
+    }
+
+    /** Return a copy of my inverse table: entry K is invert(K). */
+    int[] inverseTable() {
+        return _inverse.clone();
+    }
+
+    /** Return true iff some index of FORWARD maps to itself. */
+    private static boolean hasFixedPoint(int[] forward) {
+        for (int i = 0; i < forward.length; i += 1) {
+            if (forward[i] == i) {
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
-
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
 
-    /** Hash. */
-    private HashMap<Character, Character> _cyclesHash;
+    /** Forward mapping: index K goes to _forward[K]. */
+    private final int[] _forward;
 
-    /** array of cycles (no parentheses). */
-    private String[] _cycles;
+    /** Inverse mapping: index K comes from _inverse[K]. */
+    private final int[] _inverse;
 
-    /** temp string to spilt cycle. */
-    private String holder;
+    /** True iff this permutation has no fixed points. */
+    private final boolean _derangement;
 
 }
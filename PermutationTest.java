@@ -114,5 +114,41 @@ public class PermutationTest {
         assertEquals(true, p.derangement());
     }
 
+    @Test
+    public void testNotDerangement() {
+        Permutation p = new Permutation("(BAC)", new Alphabet("ABCD"));
+        assertEquals(false, p.derangement());
+    }
+
+    @Test
+    public void testFromTable() {
+        Permutation p = new Permutation(new int[] {2, 0, 3, 1},
+                new Alphabet("ABCD"));
+        assertEquals('C', p.permute('A'));
+        assertEquals('B', p.invert('A'));
+        assertEquals(3, p.permute(6));
+        assertEquals(1, p.invert(-4));
+        assertEquals(true, p.derangement());
+    }
+
+    @Test
+    public void testTablesAgree() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        checkPerm("table I", UPPER_STRING, NAVALA_MAP.get("I"));
+        Permutation copy = new Permutation(perm.forwardTable(), UPPER);
+        for (int i = 0; i < UPPER.size(); i += 1) {
+            assertEquals(perm.invert(i), copy.invert(i));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedInCycles() {
+        new Permutation("(ABC) (DA)", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotABijection() {
+        new Permutation(new int[] {0, 0, 1}, new Alphabet("ABC"));
+    }
 
 }
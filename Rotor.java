@@ -2,7 +2,14 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  For
+ *  alphabets of at most MAX_TABLE_SIZE characters, a rotor precomputes
+ *  its conversions at every setting, so that converting a contact is a
+ *  single array load; larger rotors convert arithmetically.  A rotor is
+ *  only wiring and never changes: the setting at which it converts is
+ *  supplied by its caller, and a machine keeps the settings of its
+ *  rotors itself (see PackedRotors), so one rotor may sit in the slots
+ *  of any number of machines on any number of threads.
  *  @author KaitoGarcia
  */
 class Rotor {
@@ -11,9 +18,52 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
+        _forward = perm.forwardTable();
+        _inverse = perm.inverseTable();
+        if (perm.size() <= MAX_TABLE_SIZE) {
+            int n = size();
+            _forwardTables = new int[n][n];
+            _backwardTables = new int[n][n];
+            for (int s = 0; s < n; s += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    _forwardTables[s][p] = shift(_forward, p, s);
+                    _backwardTables[s][p] = shift(_inverse, p, s);
+                }
+            }
+        } else {
+            _forwardTables = _backwardTables = null;
+        }
     }
 
+    /** Return the result of applying MAP to contact P of a rotor at
+     *  setting S, where 0 <= P, S < size(). */
+    private int shift(int[] map, int p, int s) {
+        int n = map.length;
+        int contact = p + s;
+        if (contact >= n) {
+            contact -= n;
+        }
+        int exit = map[contact] - s;
+        if (exit < 0) {
+            exit += n;
+        }
+        return exit;
+    }
+
+
+    /** Return the table of my forward conversions at each setting:
+     *  element [S][P] is the conversion of P at setting S.  Returns null
+     *  if my alphabet is larger than MAX_TABLE_SIZE.  The table is shared
+     *  and must not be modified. */
+    int[][] forwardTables() {
+        return _forwardTables;
+    }
+
+    /** Return the table of my backward conversions at each setting, as
+     *  for forwardTables. */
+    int[][] backwardTables() {
+        return _backwardTables;
+    }
 
     /** Return my name. */
     String name() {
@@ -45,45 +95,37 @@ class Rotor {
         return false;
     }
 
-    /** Return my current setting. */
-    int setting() {
-        return _setting;
-    }
-
-    /** Set setting() to POSN.  */
-    void set(int posn) {
-        _setting = posn;
-    }
-
-    /** Set setting() to character CPOSN. */
-    void set(char cposn) {
-        set(alphabet().toInt(cposn));
-    }
-
     /** Return the conversion of P (an integer in the range 0..size()-1)
-     *  according to my permutation. */
-    int convertForward(int p) {
-        int contact = _permutation.wrap(p + _setting);
-        int exitValue = _permutation.permute(contact);
-        return _permutation.wrap(exitValue - _setting);
+     *  according to my permutation when my setting is SETTING (also in
+     *  that range). */
+    int convertForward(int p, int setting) {
+        if (_forwardTables != null) {
+            return _forwardTables[setting][p];
+        }
+        return shift(_forward, p, setting);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
-     *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        int contact = _permutation.wrap(e + _setting);
-        int exitValue = _permutation.invert(contact);
-        return _permutation.wrap(exitValue - _setting);
+     *  according to the inverse of my permutation when my setting is
+     *  SETTING (also in that range). */
+    int convertBackward(int e, int setting) {
+        if (_backwardTables != null) {
+            return _backwardTables[setting][e];
+        }
+        return shift(_inverse, e, setting);
     }
 
-    /** Returns true iff I am positioned to allow the rotor to my left
-     *  to advance. */
-    boolean atNotch() {
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  if my setting were POSN. */
+    boolean atNotch(int posn) {
         return false;
     }
 
-    /** Advance me one position, if possible. By default, does nothing. */
-    void advance() {
+    /** Return the number of positions I must advance from setting POSN
+     *  to be at a notch (0 if I am at one), or -1 if I have no notches.
+     *  By default, I have none. */
+    int notchDistance(int posn) {
+        return -1;
     }
 
     @Override
@@ -91,14 +133,21 @@ class Rotor {
         return "Rotor " + _name;
     }
 
+    /** Largest alphabet for which a rotor precomputes its conversion
+     *  tables.  The tables take 2 * size()^2 ints, so each rotor uses at
+     *  most 8 * MAX_TABLE_SIZE^2 bytes (128 KiB); a 26-letter rotor uses
+     *  about 5 KiB. */
+    static final int MAX_TABLE_SIZE = 128;
+
     /** My name. */
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
-
-    /** setting of rotor. */
-    private int _setting;
+    private final Permutation _permutation;
 
+    /** Forward and inverse index tables of _permutation. */
+    private final int[] _forward, _inverse;
 
+    /** Conversion tables by setting, or null for large alphabets. */
+    private final int[][] _forwardTables, _backwardTables;
 }
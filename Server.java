@@ -0,0 +1,195 @@
+package enigma;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** Serves many clients from one configuration.  Each connection sends
+ *  an input file (settings lines and messages, in the same format as
+ *  Main's input), and receives the converted messages, grouped as Main
+ *  prints them, as the lines are converted.  A connection is handled by
+ *  a StreamProcessor on its own thread, a virtual thread where the Java
+ *  runtime has them; all connections share one MachinePool.  If a
+ *  connection's input has an error, the output up to the error is
+ *  followed by a line "Error: " and the message, and the connection is
+ *  closed.
+ *  @author KaitoGarcia
+ */
+class Server {
+
+    /** A server that converts with machines from POOL, reading and
+     *  writing text in CHARSET, for the clients that connect to
+     *  LISTENER. */
+    Server(MachinePool pool, ServerSocketChannel listener, Charset charset) {
+        _pool = pool;
+        _listener = listener;
+        _charset = charset;
+        _threads = newExecutor();
+    }
+
+    /** Return a channel listening on ADDRESS, which is either a port
+     *  number on the loopback interface or the path of a Unix-domain
+     *  socket to create. */
+    static ServerSocketChannel listen(String address) {
+        try {
+            ServerSocketChannel result;
+            if (address.matches("\\d+")) {
+                result = ServerSocketChannel.open();
+                result.bind(new InetSocketAddress(
+                                InetAddress.getLoopbackAddress(),
+                                Integer.parseInt(address)));
+            } else {
+                result = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                result.bind(UnixDomainSocketAddress.of(address));
+            }
+            return result;
+        } catch (IOException | IllegalArgumentException excp) {
+            throw error("could not listen on %s", address);
+        }
+    }
+
+    /** Return an executor that runs each task in a new virtual thread,
+     *  if this runtime has them, and otherwise in a pooled thread. */
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Return the address on which I listen. */
+    SocketAddress address() {
+        try {
+            return _listener.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("server is closed");
+        }
+    }
+
+    /** Accept and handle connections until I am closed. */
+    void serve() {
+        while (_listener.isOpen()) {
+            SocketChannel client;
+            try {
+                client = _listener.accept();
+            } catch (IOException excp) {
+                if (_listener.isOpen()) {
+                    throw error("could not accept a connection");
+                }
+                break;
+            }
+            _threads.execute(() -> handle(client));
+        }
+    }
+
+    /** Stop accepting connections, removing my socket file if I have
+     *  one.  Connections already accepted run to completion. */
+    void close() {
+        SocketAddress address = _listener.isOpen() ? address() : null;
+        try {
+            _listener.close();
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(
+                    ((UnixDomainSocketAddress) address).getPath());
+            }
+        } catch (IOException excp) {
+            throw error("could not close server");
+        }
+        _threads.shutdown();
+    }
+
+    /** Convert the input sent by CLIENT, sending back the results, and
+     *  close it. */
+    private void handle(SocketChannel client) {
+        try (client) {
+            GroupWriter output =
+                new GroupWriter(client, _charset, _pool.alphabet());
+            MessageReader input =
+                new MessageReader(new FlushingChannel(client, output),
+                                  _charset);
+            try {
+                new StreamProcessor(_pool, input, output).process();
+            } catch (EnigmaException excp) {
+                sendError(client, excp.getMessage());
+            }
+        } catch (IOException | EnigmaException excp) {
+            /* The client has gone; there is no one to tell. */
+            return;
+        }
+    }
+
+    /** Send CLIENT a line reporting the error MESSAGE. */
+    private void sendError(SocketChannel client, String message)
+        throws IOException {
+        ByteBuffer line =
+            _charset.encode(String.format("Error: %s%n", message));
+        while (line.hasRemaining()) {
+            client.write(line);
+        }
+    }
+
+    /** A channel that reads from another, first flushing a writer, so
+     *  that a client receives all the output for its input before the
+     *  server waits for more. */
+    private static class FlushingChannel implements ReadableByteChannel {
+
+        /** A channel reading from IN that flushes OUTPUT before each
+         *  read. */
+        FlushingChannel(ReadableByteChannel in, GroupWriter output) {
+            _in = in;
+            _output = output;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            _output.flush();
+            return _in.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _in.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** Source of input. */
+        private final ReadableByteChannel _in;
+
+        /** Writer flushed before each read. */
+        private final GroupWriter _output;
+    }
+
+    /** Source of the machines used for every connection. */
+    private final MachinePool _pool;
+
+    /** Channel on which connections arrive. */
+    private final ServerSocketChannel _listener;
+
+    /** Encoding of input and output. */
+    private final Charset _charset;
+
+    /** Threads on which connections are handled. */
+    private final ExecutorService _threads;
+}
@@ -0,0 +1,140 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author KaitoGarcia
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a pool of 5-slot, 3-pawl machines with the naval rotors B,
+     *  Beta, I, III, and IV. */
+    private MachinePool pool() {
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III", new Permutation(NAVALA.get("III"),
+                                                          UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        return new MachinePool(new Machine(UPPER, 5, 3, rotors));
+    }
+
+    /** Return the output of StreamProcessor for INPUT, converted with
+     *  a machine from POOL. */
+    private String expected(MachinePool pool, String input) {
+        byte[] bytes = input.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamProcessor(pool,
+                            Channels.newChannel(
+                                new ByteArrayInputStream(bytes)),
+                            Channels.newChannel(out),
+                            StandardCharsets.US_ASCII).process();
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    /** Send INPUT to SERVER as one client and return its reply. */
+    private String exchange(Server server, String input) throws IOException {
+        try (SocketChannel client = SocketChannel.open(server.address())) {
+            ByteBuffer request = StandardCharsets.US_ASCII.encode(input);
+            while (request.hasRemaining()) {
+                client.write(request);
+            }
+            client.shutdownOutput();
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+            while (client.read(buf) >= 0) {
+                reply.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            return reply.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** Input of NUM lines of messages after one settings line. */
+    private String input(int num) {
+        StringBuilder result =
+            new StringBuilder("* B Beta III IV I AXLE (HQ) (EX) (IP)\n");
+        for (int i = 0; i < num; i += 1) {
+            result.append("FROM HIS SHOULDER HIAWATHA\n\n");
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testClients() throws Exception {
+        MachinePool pool = pool();
+        Server server = new Server(pool, Server.listen("0"),
+                                   StandardCharsets.US_ASCII);
+        ExecutorService threads = Executors.newFixedThreadPool(5);
+        try {
+            threads.execute(server::serve);
+            List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 8; i += 1) {
+                int num = 1 + 500 * i;
+                replies.add(threads.submit(() -> exchange(server,
+                                                          input(num))));
+            }
+            for (int i = 0; i < replies.size(); i += 1) {
+                assertEquals(msg("client", "%d", i),
+                             expected(pool, input(1 + 500 * i)),
+                             replies.get(i).get());
+            }
+        } finally {
+            server.close();
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    public void testBadInput() throws Exception {
+        MachinePool pool = pool();
+        Server server = new Server(pool, Server.listen("0"),
+                                   StandardCharsets.US_ASCII);
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        try {
+            String good = input(1);
+            assertEquals(expected(pool, good) + "Error: must be in alphabet"
+                         + System.lineSeparator(),
+                         exchange(server, good + "BAD LINe\nABC\n"));
+            assertEquals("Error: Invalid start of input file."
+                         + System.lineSeparator(),
+                         exchange(server, "HELLO\n"));
+        } finally {
+            server.close();
+            serving.join();
+        }
+    }
+}
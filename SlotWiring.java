@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The wiring of the rotors in a machine's slots, flattened into
+ *  parallel arrays indexed by slot: whether each rotor steps, notch
+ *  bitmasks, and the conversion tables for every setting.  A SlotWiring
+ *  never changes once built, so any number of PackedRotors, on any
+ *  number of threads, may share one without locking; each holds only
+ *  its own settings.  Slot 0 holds the reflector.
+ *  @author KaitoGarcia
+ */
+class SlotWiring {
+
+    /** The wiring of the rotors in SLOTS.  SLOTS.get(0) must be a
+     *  reflector, no rotor may appear twice, and all must have the same
+     *  alphabet size. */
+    SlotWiring(List<Rotor> slots) {
+        _rotors = Collections.unmodifiableList(new ArrayList<>(slots));
+        _numSlots = slots.size();
+        _size = slots.get(0).size();
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        if (!slots.get(0).reflecting()) {
+            throw error("first rotor must be a reflector");
+        }
+        _steps = new int[_numSlots];
+        _notches = new long[_numSlots * _words];
+        _forwardTables = new int[_numSlots][][];
+        _backwardTables = new int[_numSlots][][];
+        _forwardMaps = new int[_numSlots][];
+        _backwardMaps = new int[_numSlots][];
+        for (int k = 0; k < _numSlots; k += 1) {
+            Rotor r = slots.get(k);
+            if (r.size() != _size) {
+                throw error("rotor %s has the wrong alphabet", r.name());
+            }
+            for (int j = 0; j < k; j += 1) {
+                if (slots.get(j) == r) {
+                    throw error("rotor %s repeated", r.name());
+                }
+            }
+            _steps[k] = r.rotates() ? 1 : 0;
+            for (int p = 0; p < _size; p += 1) {
+                if (r.atNotch(p)) {
+                    _notches[k * _words + (p >>> WORD_SHIFT)] |= 1L << p;
+                }
+            }
+            _forwardTables[k] = r.forwardTables();
+            _backwardTables[k] = r.backwardTables();
+            _forwardMaps[k] = r.permutation().forwardTable();
+            _backwardMaps[k] = r.permutation().inverseTable();
+        }
+        _tabled = _forwardTables[0] != null;
+    }
+
+    /** Return the number of slots. */
+    int numSlots() {
+        return _numSlots;
+    }
+
+    /** Return the size of the rotors' alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the rotor in slot K. */
+    Rotor rotor(int k) {
+        return _rotors.get(k);
+    }
+
+    /** Return the stepping rules of my rotors.  They are built once, on
+     *  first use, and shared by every machine using me, so that the
+     *  trails the Odometer remembers serve all of them. */
+    Odometer odometer() {
+        Odometer result = _odometer;
+        if (result == null) {
+            synchronized (this) {
+                result = _odometer;
+                if (result == null) {
+                    result = new Odometer(_rotors);
+                    _odometer = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Log2 of the number of bits in a word of _notches. */
+    static final int WORD_SHIFT = 6;
+
+    /** The rotors in my slots. */
+    private final List<Rotor> _rotors;
+
+    /** Number of slots. */
+    final int _numSlots;
+
+    /** Size of the rotors' alphabet. */
+    final int _size;
+
+    /** Words of _notches per slot. */
+    final int _words;
+
+    /** True iff conversions use the rotors' precomputed tables. */
+    final boolean _tabled;
+
+    /** Amount each slot advances when stepped: 1 if its rotor rotates,
+     *  else 0. */
+    final int[] _steps;
+
+    /** Notch bitmasks: bit P of words [K * _words .. (K+1) * _words - 1]
+     *  is set iff slot K's rotor is at a notch at setting P. */
+    final long[] _notches;
+
+    /** Each slot's rotor's conversion tables, or nulls if !_tabled. */
+    final int[][][] _forwardTables, _backwardTables;
+
+    /** Each slot's rotor's wiring at setting 0. */
+    final int[][] _forwardMaps, _backwardMaps;
+
+    /** Stepping rules of my rotors, or null if not yet built. */
+    private volatile Odometer _odometer;
+}
@@ -0,0 +1,59 @@
+package enigma;
+
+/** The shape of the sequence of rotor settings that a machine passes
+ *  through, one state per keystroke, from a given starting state.  As
+ *  there are finitely many states, the sequence is eventually periodic:
+ *  after prePeriod() keystrokes it repeats every period() keystrokes.
+ *  The pre-period may be positive because double stepping makes some
+ *  states unreachable from any other.
+ *  @author KaitoGarcia
+ */
+class StatePeriod {
+
+    /** The shape of a sequence with pre-period PREPERIOD and period
+     *  PERIOD, in each period of which slot K advances ADVANCES[K]
+     *  times. */
+    StatePeriod(long prePeriod, long period, long[] advances) {
+        _prePeriod = prePeriod;
+        _period = period;
+        _advances = advances;
+    }
+
+    /** Return the number of keystrokes before the first state that
+     *  recurs. */
+    long prePeriod() {
+        return _prePeriod;
+    }
+
+    /** Return the number of keystrokes after which every state from
+     *  prePeriod() on recurs. */
+    long period() {
+        return _period;
+    }
+
+    /** Return the number of times slot K advances in one period. */
+    long advances(int k) {
+        return _advances[k];
+    }
+
+    /** Return the fraction of keystrokes in one period on which slot K
+     *  advances. */
+    double frequency(int k) {
+        return (double) _advances[k] / _period;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pre-period %d, period %d",
+                             _prePeriod, _period);
+    }
+
+    /** Keystrokes before the periodic part. */
+    private final long _prePeriod;
+
+    /** Keystrokes in each period. */
+    private final long _period;
+
+    /** Advances of each slot in one period. */
+    private final long[] _advances;
+}
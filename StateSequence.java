@@ -0,0 +1,80 @@
+package enigma;
+
+/** The conversion performed by a machine at every state of its rotors'
+ *  sequence of states, from a starting state through one full period,
+ *  stored as one table.  Row T of the table is the conversion, plugboard
+ *  included, made by the keystroke taken from the T-th state after the
+ *  start; after the last row, the sequence continues at row
+ *  prePeriod().  A StateSequence never changes, so copies of a machine
+ *  may share one.
+ *  @author KaitoGarcia
+ */
+class StateSequence {
+
+    /** The sequence of conversions made by rotors SLOTS, starting at
+     *  their current settings and with the plugboard PLUGBOARD, whose
+     *  states have the shape PERIOD.  SLOTS is not changed. */
+    StateSequence(PackedRotors slots, Permutation plugboard,
+                  StatePeriod period) {
+        _size = plugboard.size();
+        _base = new int[slots.numSlots()];
+        for (int k = 0; k < _base.length; k += 1) {
+            _base[k] = slots.setting(k);
+        }
+        _rows = (int) (period.prePeriod() + period.period());
+        _prePeriod = (int) period.prePeriod();
+        _table = new char[_rows * _size];
+        PackedRotors cursor = new PackedRotors(slots);
+        for (int row = 0, i = 0; row < _rows; row += 1) {
+            cursor.step();
+            for (int c = 0; c < _size; c += 1, i += 1) {
+                int p = cursor.convert(plugboard.permute(c));
+                _table[i] = (char) plugboard.invert(p);
+            }
+        }
+    }
+
+    /** Return the settings of the starting state. */
+    int[] base() {
+        return _base.clone();
+    }
+
+    /** Return the offset in table() of the first row of the periodic
+     *  part. */
+    int periodOffset() {
+        return _prePeriod * _size;
+    }
+
+    /** Return the offset just past the last row of table(). */
+    int end() {
+        return _table.length;
+    }
+
+    /** Return the table: entry [T * size + C] is the conversion of C
+     *  by the keystroke taken from state T.  The array is shared and
+     *  must not be modified. */
+    char[] table() {
+        return _table;
+    }
+
+    /** Largest number of entries in a table. */
+    static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+    /** Number of bytes in a table entry. */
+    static final int ENTRY_BYTES = Character.BYTES;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Settings of every slot in the starting state. */
+    private final int[] _base;
+
+    /** Number of rows: the pre-period plus the period. */
+    private final int _rows;
+
+    /** Number of rows before the periodic part. */
+    private final int _prePeriod;
+
+    /** The conversions, one row of _size entries per state. */
+    private final char[] _table;
+}
@@ -0,0 +1,213 @@
+package enigma;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a Machine from a MachinePool to an input file of settings
+ *  lines and messages read from a channel, writing the results to
+ *  another channel.  The input is scanned by hand, one character at a
+ *  time, and message characters go straight into the machine; the
+ *  output is the same as that of Main's line-by-line processing.
+ *  @author KaitoGarcia
+ */
+class StreamProcessor {
+
+    /** A processor that applies a machine from POOL to the messages in
+     *  IN, writing to OUT, both encoded in CHARSET. */
+    StreamProcessor(MachinePool pool, ReadableByteChannel in,
+                    WritableByteChannel out, Charset charset) {
+        this(pool, new MessageReader(in, charset),
+             new GroupWriter(out, charset, pool.alphabet()));
+    }
+
+    /** A processor that applies a machine from POOL to the messages read
+     *  from INPUT, writing to OUTPUT. */
+    StreamProcessor(MachinePool pool, MessageReader input,
+                    GroupWriter output) {
+        _pool = pool;
+        _machine = pool.machine();
+        _alphabet = pool.alphabet();
+        _input = input;
+        _output = output;
+    }
+
+    /** Process all of my input.  Output produced before any error is
+     *  flushed. */
+    void process() {
+        try {
+            _input.skipWhitespace();
+            if (_input.peek() != '*' || !_input.atLineStart()) {
+                throw error("Invalid start of input file.");
+            }
+            do {
+                readSettings();
+            } while (processMessages());
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Read a settings line and apply it to _machine. */
+    private void readSettings() {
+        String[] rotors = new String[_machine.numRotors()];
+        String first = _input.token();
+        if (first.equals("*")) {
+            rotors[0] = _input.token();
+        } else {
+            rotors[0] = first.substring(1);
+        }
+        for (int i = 1; i < rotors.length; i += 1) {
+            rotors[i] = _input.token();
+        }
+        _pool.insertRotors(_machine, rotors);
+        Metrics.countRekey();
+        _machine.setRotors(_input.token());
+
+        String[] tail = _input.restOfLine().trim().split("\\s+");
+        int k = 0;
+        String set = "";
+        if (!tail[0].isEmpty() && !isCycles(tail[0])) {
+            set = tail[0];
+            k = 1;
+        }
+        _machine.setRotors(set);
+
+        StringBuilder cycles = new StringBuilder();
+        for (; k < tail.length && isCycleText(tail[k]); k += 1) {
+            cycles.append(tail[k]);
+        }
+        _machine.setPlugboard(_pool.plugboard(cycles.toString()));
+    }
+
+    /** Return true iff TOKEN is a parenthesized group of cycles. */
+    private static boolean isCycles(String token) {
+        return token.length() > 2 && token.charAt(0) == '('
+            && token.charAt(token.length() - 1) == ')';
+    }
+
+    /** Return true iff TOKEN contains a parenthesis or bar. */
+    private static boolean isCycleText(String token) {
+        return token.indexOf('(') >= 0 || token.indexOf(')') >= 0
+            || token.indexOf('|') >= 0;
+    }
+
+    /** Convert and print message lines up to the next settings line or
+     *  the end of input.  Returns true iff a settings line follows.
+     *  Blank lines between messages print as empty lines; blank lines
+     *  just before a settings line print as CRLFs. */
+    private boolean processMessages() {
+        while (true) {
+            int blankLines = 0, crlfs = 0;
+            int chunkLength = 0;
+            boolean partial = false, newlinesOnly = true, crlfPairs = true;
+            boolean chunksValid = true;
+            int c = _input.peek();
+            while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                _input.read();
+                if (c == ' ' || c == '\t') {
+                    partial = true;
+                    if (chunkLength > 0) {
+                        crlfs += chunkCrlfs(chunkLength, newlinesOnly,
+                                            crlfPairs, chunksValid);
+                        chunksValid &= newlinesOnly
+                            || (crlfPairs && chunkLength % 2 == 0);
+                    }
+                    chunkLength = 0;
+                    newlinesOnly = crlfPairs = true;
+                } else {
+                    boolean even = chunkLength % 2 == 0;
+                    newlinesOnly &= c == '\n';
+                    crlfPairs &= c == (even ? '\r' : '\n');
+                    chunkLength += 1;
+                    if (c == '\n' || _input.peek() != '\n') {
+                        blankLines += 1;
+                        partial = false;
+                    } else {
+                        partial = true;
+                    }
+                }
+                c = _input.peek();
+            }
+            if (c == -1) {
+                for (int i = blankLines + (partial ? 1 : 0); i > 0; i -= 1) {
+                    _output.endLine();
+                }
+                return false;
+            } else if (c == '*' && _input.atLineStart()) {
+                if (chunkLength > 0) {
+                    crlfs += chunkCrlfs(chunkLength, newlinesOnly,
+                                        crlfPairs, chunksValid);
+                }
+                for (int i = 0; i < crlfs; i += 1) {
+                    _output.crlf();
+                }
+                return true;
+            }
+            for (int i = 0; i < blankLines; i += 1) {
+                _output.endLine();
+            }
+            processLine();
+        }
+    }
+
+    /** Return the number of CRLFs printed for a run of CHUNKLENGTH line
+     *  terminator characters, which are all newlines iff NEWLINESONLY and
+     *  are all CRLF pairs iff CRLFPAIRS, provided CHUNKSVALID (all earlier
+     *  runs were printed). */
+    private static int chunkCrlfs(int chunkLength, boolean newlinesOnly,
+                                  boolean crlfPairs, boolean chunksValid) {
+        if (!chunksValid) {
+            return 0;
+        } else if (newlinesOnly) {
+            return chunkLength;
+        } else if (crlfPairs && chunkLength % 2 == 0) {
+            return chunkLength / 2;
+        }
+        return 0;
+    }
+
+    /** Convert the rest of the current line, ignoring blanks and tabs, and
+     *  print it in groups of five.  Nothing is printed if the line holds
+     *  a character outside the alphabet, unless part of the line has
+     *  already left the output buffer. */
+    private void processLine() {
+        try {
+            for (int c = _input.read(); c != -1; c = _input.read()) {
+                if (c == '\n') {
+                    break;
+                } else if (c == '\r') {
+                    if (_input.peek() == '\n') {
+                        _input.read();
+                    }
+                    break;
+                } else if (c != ' ' && c != '\t') {
+                    int index = _alphabet.toInt((char) c);
+                    _output.put(_alphabet.toChar(_machine.convert(index)));
+                }
+            }
+        } catch (EnigmaException excp) {
+            _output.abandonLine();
+            throw excp;
+        }
+        _machine.flushMetrics();
+        _output.endLine();
+    }
+
+    /** Source of _machine and of its rotors and plugboards. */
+    private final MachinePool _pool;
+
+    /** The machine applied to my messages. */
+    private final Machine _machine;
+
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Source of settings lines and messages. */
+    private final MessageReader _input;
+
+    /** Destination of converted messages. */
+    private final GroupWriter _output;
+}
@@ -1,6 +1,8 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -18,6 +20,33 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return a 4-slot, 3-pawl machine over UPPER with the reflector B
+     *  and the moving rotors I, II, and III of NAVALA, with no rotors
+     *  inserted. */
+    static Machine navalMachine() {
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        String[][] moving = { { "I", "Q" }, { "II", "E" }, { "III", "V" } };
+        for (String[] r : moving) {
+            rotors.add(new MovingRotor(r[0],
+                                       new Permutation(NAVALA.get(r[0]),
+                                                       UPPER), r[1]));
+        }
+        return new Machine(UPPER, 4, 3, rotors);
+    }
+
+    /** Return TEXT encrypted with the rotors ROTORS at SETTING and the
+     *  plugboard CYCLES on a machine like navalMachine(). */
+    static String navalEncrypt(String text, String[] rotors,
+                               String setting, String cycles) {
+        Machine m = navalMachine();
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(cycles, UPPER));
+        return m.convert(text);
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -11,7 +11,16 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
+                                      AlphabetTest.class,
                                       MovingRotorTest.class,
+                                      GroupWriterTest.class,
+                                      MultiMachineTest.class,
+                                      ServerTest.class,
+                                      KeySearchTest.class,
+                                      BombeTest.class,
+                                      ConfigParserTest.class,
+                                      CompiledConfigTest.class,
+                                      MetricsTest.class,
                                     MachineTest.class));
     }
 
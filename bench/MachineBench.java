@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Machine conversions with machines of 3, 4, and 8
+ *  rotors, converting single characters and messages of several sizes.
+ *  @author KaitoGarcia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MachineBench {
+
+    /** Number of rotors in the machine under test. */
+    @Param({ "3", "4", "8" })
+    public int numRotors;
+
+    /** A random message, of several lengths. */
+    @State(Scope.Thread)
+    public static class Message {
+
+        /** Length of the message. */
+        @Param({ "16", "1024", "65536" })
+        public int messageLength;
+
+        /** Build the message. */
+        @Setup
+        public void setUp() {
+            Random rand = new Random(messageLength);
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < messageLength; i += 1) {
+                msg.append((char) ('A' + rand.nextInt(SIZE)));
+            }
+            _text = msg.toString();
+        }
+
+        /** The text of the message. */
+        private String _text;
+    }
+
+    /** Build the machine under test. */
+    @Setup
+    public void setUp() {
+        _machine = Rotors.machine(numRotors);
+    }
+
+    /** Conversion of one character index, including stepping. */
+    @Benchmark
+    public int convertInt() {
+        _index = _index + 1 == SIZE ? 0 : _index + 1;
+        return _machine.convert(_index);
+    }
+
+    /** Conversion of MSG. */
+    @Benchmark
+    public String convertString(Message msg) {
+        return _machine.convert(msg._text);
+    }
+
+    /** Size of the machine's alphabet. */
+    private static final int SIZE = 26;
+
+    /** The machine under test. */
+    private Machine _machine;
+
+    /** Last input index. */
+    private int _index;
+}
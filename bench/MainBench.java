@@ -0,0 +1,109 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmarks of Main on generated input files of several
+ *  megabytes, in each of its input modes.
+ *  @author KaitoGarcia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MainBench {
+
+    /** Approximate size of the input file in megabytes. */
+    @Param({ "4", "32" })
+    public int megabytes;
+
+    /** Option selecting Main's input mode, or "" for the default. */
+    @Param({ "", "--stream", "--mmap" })
+    public String mode;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        _config = _dir.resolve("bench.conf");
+        _input = _dir.resolve("bench.in");
+        _output = _dir.resolve("bench.out");
+        Files.writeString(_config, Rotors.config(NUM_ROTORS));
+        Random rand = new Random(megabytes);
+        long size = (long) megabytes << 20;
+        try (PrintWriter out =
+             new PrintWriter(Files.newBufferedWriter(_input))) {
+            out.println(Rotors.settingsLine(NUM_ROTORS));
+            for (long n = 0; n < size;) {
+                int len = rand.nextInt(MAX_LINE);
+                for (int i = 0; i < len; i += 1) {
+                    int c = rand.nextInt(SIZE + 1);
+                    out.print(c == SIZE ? ' ' : (char) ('A' + c));
+                }
+                out.println();
+                n += len + 1;
+            }
+        }
+    }
+
+    /** Remove the files written by setUp and by the benchmark. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_config);
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Process the whole input file. */
+    @Benchmark
+    public void process() {
+        String[] files = { _config.toString(), _input.toString(),
+                           _output.toString() };
+        if (mode.isEmpty()) {
+            Main.main(files);
+        } else {
+            Main.main(mode, files[0], files[1], files[2]);
+        }
+    }
+
+    /** Number of rotors in the machine. */
+    private static final int NUM_ROTORS = 5;
+
+    /** Size of the alphabet. */
+    private static final int SIZE = 26;
+
+    /** Longest generated input line, not counting its newline. */
+    private static final int MAX_LINE = 80;
+
+    /** Directory holding the benchmark's files. */
+    private Path _dir;
+
+    /** Configuration file. */
+    private Path _config;
+
+    /** Input file. */
+    private Path _input;
+
+    /** Output file. */
+    private Path _output;
+}
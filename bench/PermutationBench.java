@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Permutation and Alphabet lookups.  Each operation
+ *  applies one lookup to the next of a cycle of inputs, so that the
+ *  JIT cannot fold it into a constant.
+ *  @author KaitoGarcia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBench {
+
+    /** Build the permutation and alphabet under test. */
+    @Setup
+    public void setUp() {
+        _alphabet = new Alphabet();
+        _perm = new Permutation(Rotors.NAVAL[0][2], _alphabet);
+    }
+
+    /** Return the next input index. */
+    private int next() {
+        _index = _index + 1 == SIZE ? 0 : _index + 1;
+        return _index;
+    }
+
+    /** Return the next input character. */
+    private char nextChar() {
+        return (char) ('A' + next());
+    }
+
+    /** Forward permutation of an index. */
+    @Benchmark
+    public int permuteInt() {
+        return _perm.permute(next());
+    }
+
+    /** Inverse permutation of an index. */
+    @Benchmark
+    public int invertInt() {
+        return _perm.invert(next());
+    }
+
+    /** Forward permutation of a character. */
+    @Benchmark
+    public char permuteChar() {
+        return _perm.permute(nextChar());
+    }
+
+    /** Inverse permutation of a character. */
+    @Benchmark
+    public char invertChar() {
+        return _perm.invert(nextChar());
+    }
+
+    /** Index of a character in the alphabet. */
+    @Benchmark
+    public int toInt() {
+        return _alphabet.toInt(nextChar());
+    }
+
+    /** Size of the alphabet. */
+    private static final int SIZE = 26;
+
+    /** The alphabet under test. */
+    private Alphabet _alphabet;
+
+    /** The permutation under test: naval rotor I. */
+    private Permutation _perm;
+
+    /** Last input index. */
+    private int _index;
+}
@@ -0,0 +1,59 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of a single rotor's conversions.  Each operation advances
+ *  the setting and converts the next of a cycle of inputs, as a machine
+ *  does with its last rotor.
+ *  @author KaitoGarcia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotorBench {
+
+    /** Build the rotor under test. */
+    @Setup
+    public void setUp() {
+        _rotor = Rotors.rotor("I");
+    }
+
+    /** Advance the setting and return the next input index. */
+    private int next() {
+        _setting = _setting + 1 == SIZE ? 0 : _setting + 1;
+        _index = _index + 1 == SIZE ? 0 : _index + 1;
+        return _index;
+    }
+
+    /** Conversion from right to left. */
+    @Benchmark
+    public int convertForward() {
+        return _rotor.convertForward(next(), _setting);
+    }
+
+    /** Conversion from left to right. */
+    @Benchmark
+    public int convertBackward() {
+        return _rotor.convertBackward(next(), _setting);
+    }
+
+    /** Size of the rotor's alphabet. */
+    private static final int SIZE = 26;
+
+    /** The rotor under test: naval rotor I. */
+    private Rotor _rotor;
+
+    /** Current setting of the rotor. */
+    private int _setting;
+
+    /** Last input index. */
+    private int _index;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The naval rotors and machines built from them, for use in
+ *  benchmarks.
+ *  @author KaitoGarcia
+ */
+class Rotors {
+
+    /** Descriptions of the naval rotors: name, type and notches, and
+     *  cycles, as in a configuration file. */
+    static final String[][] NAVAL = {
+        { "I", "MQ", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)" },
+        { "II", "ME", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)" },
+        { "III", "MV", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)" },
+        { "IV", "MJ", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)" },
+        { "V", "MZ", "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)" },
+        { "VI", "MZM", "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)" },
+        { "VII", "MZM", "(ANOUPFRIMBZTLWKSVEGCJYDHXQ)" },
+        { "VIII", "MZM", "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)" },
+        { "Beta", "N", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)" },
+        { "Gamma", "N", "(AFNIRLBSQWVXGUZDKMTPCOYJHE)" },
+        { "B", "R", "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+          + "(RX) (SZ) (TV)" },
+        { "C", "R", "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW) "
+          + "(QZ) (SX) (UY)" },
+    };
+
+    /** The rotors in each benchmarked machine, indexed by number of
+     *  rotors. */
+    static final String[][] SLOTS = {
+        null, null, null,
+        { "B", "II", "I" },
+        { "B", "III", "II", "I" },
+        { "B", "Beta", "III", "IV", "I" },
+        null, null,
+        { "B", "Beta", "VI", "V", "IV", "III", "II", "I" },
+    };
+
+    /** The plugboard of benchmarked machines. */
+    static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the naval rotor named NAME. */
+    static Rotor rotor(String name) {
+        Alphabet alpha = new Alphabet();
+        for (String[] desc : NAVAL) {
+            if (desc[0].equals(name)) {
+                Permutation perm = new Permutation(desc[2], alpha);
+                switch (desc[1].charAt(0)) {
+                case 'M':
+                    return new MovingRotor(name, perm, desc[1].substring(1));
+                case 'N':
+                    return new FixedRotor(name, perm);
+                default:
+                    return new Reflector(name, perm);
+                }
+            }
+        }
+        throw new IllegalArgumentException("no rotor " + name);
+    }
+
+    /** Return a machine with NUMROTORS of the naval rotors inserted (see
+     *  SLOTS), set to all As, with the standard plugboard. */
+    static Machine machine(int numRotors) {
+        String[] slots = SLOTS[numRotors];
+        List<Rotor> all = new ArrayList<>();
+        int pawls = 0;
+        for (String[] desc : NAVAL) {
+            all.add(rotor(desc[0]));
+        }
+        for (String name : slots) {
+            if (rotor(name).rotates()) {
+                pawls += 1;
+            }
+        }
+        Alphabet alpha = new Alphabet();
+        Machine result = new Machine(alpha, numRotors, pawls, all);
+        result.insertRotors(slots);
+        result.setRotors("A".repeat(numRotors - 1));
+        result.setPlugboard(new Permutation(PLUGBOARD, alpha));
+        return result;
+    }
+
+    /** Return the text of a configuration file describing the naval
+     *  rotors for machines of NUMROTORS rotors. */
+    static String config(int numRotors) {
+        int pawls = 0;
+        for (String name : SLOTS[numRotors]) {
+            if (rotor(name).rotates()) {
+                pawls += 1;
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        result.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n");
+        result.append(numRotors).append(' ').append(pawls).append('\n');
+        for (String[] desc : NAVAL) {
+            result.append(String.join(" ", desc)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a settings line for a machine of NUMROTORS rotors. */
+    static String settingsLine(int numRotors) {
+        return "* " + String.join(" ", SLOTS[numRotors]) + " "
+            + "A".repeat(numRotors - 1) + " " + PLUGBOARD;
+    }
+}